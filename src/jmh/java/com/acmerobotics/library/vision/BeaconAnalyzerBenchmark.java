@@ -0,0 +1,73 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BeaconAnalyzerBenchmark {
+
+	// longest side of the input and the analyzer's working resolution, so no resize is measured
+	@Param({"320", "640", "1280"})
+	public int size;
+
+	@Param({"BUTTON_ELLIPSE", "BUTTON_HOUGH"})
+	public ButtonDetectionMethod method;
+
+	@Param({"0", "20"})
+	public int distractors;
+
+	// search for buttons in each region's rect instead of the whole frame
+	@Param({"false", "true"})
+	public boolean regionScoped;
+
+	private Mat image;
+	private BeaconAnalyzer analyzer;
+	private List<Beacon> beacons;
+
+	@Setup
+	public void setup() {
+		image = SyntheticBeacons.createBeaconImage(size, distractors, 42);
+		analyzer = new BeaconAnalyzer();
+		analyzer.setResolution(size);
+		// keep the input intact between invocations
+		analyzer.setPreserveInput(true);
+		analyzer.setRegionScopedButtons(regionScoped);
+		beacons = new ArrayList<Beacon>();
+	}
+
+	@Benchmark
+	public List<Beacon> analyzeImage() {
+		beacons.clear();
+		analyzer.analyze(image, method, beacons);
+		return beacons;
+	}
+
+	@TearDown
+	public void tearDown() {
+		analyzer.release();
+		image.release();
+	}
+
+}
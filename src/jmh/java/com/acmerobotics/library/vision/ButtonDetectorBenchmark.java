@@ -0,0 +1,92 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Button search on the thresholded region image of the red half. Both methods copy the input
+ * first because the ellipse method works in place; {@link #copyOnly()} measures that copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ButtonDetectorBenchmark {
+
+	@Param({"320", "640", "1280"})
+	public int size;
+
+	private Mat image, thresholded, work;
+	private ButtonDetector buttonDetector;
+	private List<Circle> circles;
+
+	@Setup
+	public void setup() {
+		image = SyntheticBeacons.createBeaconImage(size, 20, 42);
+		FrameContext frame = new FrameContext(image);
+		ColorDetector detector = new ColorDetector(BeaconAnalyzer.getDefaultRedRange());
+		detector.analyzeImage(frame, null, BeaconColor.RED.toString());
+
+		thresholded = new Mat();
+		detector.clipRegion(frame.getGray(), thresholded);
+		Imgproc.threshold(thresholded, thresholded, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+		Core.bitwise_and(thresholded, detector.getMask(), thresholded);
+		detector.release();
+		frame.release();
+
+		work = new Mat();
+		buttonDetector = new ButtonDetector();
+		circles = new ArrayList<Circle>();
+	}
+
+	@Benchmark
+	public Mat copyOnly() {
+		thresholded.copyTo(work);
+		return work;
+	}
+
+	@Benchmark
+	public List<Circle> findButtonsEllipse() {
+		thresholded.copyTo(work);
+		buttonDetector.findButtons(work, ButtonDetectionMethod.BUTTON_ELLIPSE, circles);
+		return circles;
+	}
+
+	@Benchmark
+	public List<Circle> findButtonsHough() {
+		thresholded.copyTo(work);
+		buttonDetector.findButtons(work, ButtonDetectionMethod.BUTTON_HOUGH, circles);
+		return circles;
+	}
+
+	@TearDown
+	public void tearDown() {
+		buttonDetector.release();
+		thresholded.release();
+		work.release();
+		image.release();
+	}
+
+}
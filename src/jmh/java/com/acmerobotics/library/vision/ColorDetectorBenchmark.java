@@ -0,0 +1,77 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ColorDetectorBenchmark {
+
+	@Param({"320", "640", "1280"})
+	public int size;
+
+	private Mat image, hsv, mask, temp;
+	private FrameContext frame;
+	private ColorDetector detector;
+	private ScalarRange red;
+
+	@Setup
+	public void setup() {
+		image = SyntheticBeacons.createBeaconImage(size, 20, 42);
+		frame = new FrameContext(image);
+		hsv = frame.getHsv();
+		mask = new Mat();
+		temp = new Mat();
+		red = BeaconAnalyzer.getDefaultRedRange();
+		detector = new ColorDetector(red);
+	}
+
+	@Benchmark
+	public List<ColorRegion> colorDetector() {
+		// the colorspace conversion is part of a detector pass on a fresh frame
+		frame.setImage(image);
+		detector.analyzeImage(frame, null, "");
+		return detector.getRegions();
+	}
+
+	@Benchmark
+	public Mat scalarRangeInRange() {
+		red.inRange(hsv, mask, temp);
+		return mask;
+	}
+
+	@Benchmark
+	public Mat scalarRangeInRangeAllocating() {
+		Mat dest = red.inRange(hsv);
+		dest.release();
+		return dest;
+	}
+
+	@TearDown
+	public void tearDown() {
+		detector.release();
+		frame.release();
+		mask.release();
+		temp.release();
+		image.release();
+	}
+
+}
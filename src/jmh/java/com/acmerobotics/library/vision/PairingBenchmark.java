@@ -0,0 +1,72 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The region pairing loop on its own, over the regions of a 640 px frame with a varying
+ * number of distractor blobs, with and without the pair pre-filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PairingBenchmark {
+
+	@Param({"0", "20", "80"})
+	public int distractors;
+
+	@Param({"true", "false"})
+	public boolean filtered;
+
+	private Mat image;
+	private BeaconAnalyzer analyzer;
+	private List<BeaconRegion> regions;
+	private List<Beacon> beacons;
+
+	@Setup
+	public void setup() {
+		image = SyntheticBeacons.createBeaconImage(640, distractors, 42);
+		analyzer = new BeaconAnalyzer();
+		if (!filtered) {
+			analyzer.setPairFilter(null);
+		}
+
+		regions = new ArrayList<BeaconRegion>();
+		analyzer.findAllRegions(new FrameContext(image), ButtonDetectionMethod.BUTTON_ELLIPSE, regions);
+		beacons = new ArrayList<Beacon>();
+	}
+
+	@Benchmark
+	public List<Beacon> pairRegions() {
+		beacons.clear();
+		analyzer.pairRegions(regions, beacons);
+		return beacons;
+	}
+
+	@TearDown
+	public void tearDown() {
+		analyzer.release();
+		image.release();
+	}
+
+}
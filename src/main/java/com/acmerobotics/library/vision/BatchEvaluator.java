@@ -0,0 +1,360 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a directory of labelled images (see {@link BeaconLabel}) through {@link BeaconAnalyzer}
+ * on all cores, one analyzer per worker thread, and scores the detections against the labels.
+ * A detection is a true positive when its colors match an unmatched label and its bounding
+ * rect overlaps the label's by at least {@link #setMinOverlap(double)} (intersection over
+ * union). Only the best {@link #setMaxDetections(int)} beacons of each image are scored,
+ * ordered by score and then area, since that's what a robot would act on.
+ * <p>
+ * Can also be run from the command line: {@code BatchEvaluator <image dir> [label file]
+ * [results file]}, where the label file defaults to {@code labels.txt} in the image directory.
+ */
+public class BatchEvaluator {
+
+	public interface AnalyzerFactory {
+		BeaconAnalyzer create();
+	}
+
+	public static class Detection {
+		public final String colors;
+		public final Rect bounds;
+		public final String score;
+		public final int numericScore;
+		public final boolean matched;
+
+		public Detection(String colors, Rect bounds, String score, int numericScore, boolean matched) {
+			this.colors = colors;
+			this.bounds = bounds;
+			this.score = score;
+			this.numericScore = numericScore;
+			this.matched = matched;
+		}
+	}
+
+	public static class ImageResult {
+		public final String file;
+		public final List<Detection> detections;
+		public final int truePositives, falsePositives, falseNegatives;
+		public final long analysisMicros;
+		public final Map<PipelineStats.Stage, Long> stageMicros;
+
+		public ImageResult(String file, List<Detection> detections, int truePositives, int falsePositives, int falseNegatives,
+						   long analysisMicros, Map<PipelineStats.Stage, Long> stageMicros) {
+			this.file = file;
+			this.detections = detections;
+			this.truePositives = truePositives;
+			this.falsePositives = falsePositives;
+			this.falseNegatives = falseNegatives;
+			this.analysisMicros = analysisMicros;
+			this.stageMicros = stageMicros;
+		}
+	}
+
+	public static class Summary {
+		public final int images, truePositives, falsePositives, falseNegatives;
+		public final long wallNanos;
+		public final Map<PipelineStats.Stage, Long> stageMicros;
+
+		public Summary(List<ImageResult> results, long wallNanos) {
+			int tp = 0, fp = 0, fn = 0;
+			Map<PipelineStats.Stage, Long> totals = new EnumMap<PipelineStats.Stage, Long>(PipelineStats.Stage.class);
+			for (PipelineStats.Stage stage : PipelineStats.Stage.values()) {
+				totals.put(stage, 0L);
+			}
+			for (ImageResult result : results) {
+				tp += result.truePositives;
+				fp += result.falsePositives;
+				fn += result.falseNegatives;
+				for (Map.Entry<PipelineStats.Stage, Long> entry : result.stageMicros.entrySet()) {
+					totals.put(entry.getKey(), totals.get(entry.getKey()) + entry.getValue());
+				}
+			}
+			this.images = results.size();
+			this.truePositives = tp;
+			this.falsePositives = fp;
+			this.falseNegatives = fn;
+			this.wallNanos = wallNanos;
+			this.stageMicros = totals;
+		}
+
+		public double getPrecision() {
+			return truePositives + falsePositives == 0 ? 1 : (double) truePositives / (truePositives + falsePositives);
+		}
+
+		public double getRecall() {
+			return truePositives + falseNegatives == 0 ? 1 : (double) truePositives / (truePositives + falseNegatives);
+		}
+
+		public double getImagesPerSecond() {
+			return wallNanos == 0 ? 0 : images / (wallNanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("images=%d tp=%d fp=%d fn=%d precision=%.3f recall=%.3f%n",
+					images, truePositives, falsePositives, falseNegatives, getPrecision(), getRecall()));
+			sb.append(String.format("%.1f images/s (%.2f s wall)%n", getImagesPerSecond(), wallNanos / 1e9));
+			for (Map.Entry<PipelineStats.Stage, Long> entry : stageMicros.entrySet()) {
+				if (entry.getValue() > 0 && images > 0) {
+					sb.append(String.format("%-14s %8.2f ms/image%n", entry.getKey(), entry.getValue() / 1000.0 / images));
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	private static final BeaconAreaComparator beaconAreaComparator = new BeaconAreaComparator();
+	private static final Comparator<Beacon> rankComparator = new Comparator<Beacon>() {
+		@Override
+		public int compare(Beacon o1, Beacon o2) {
+			int scoreCompare = o2.getScore().getNumericScore() - o1.getScore().getNumericScore();
+			return scoreCompare != 0 ? scoreCompare : beaconAreaComparator.compare(o1, o2);
+		}
+	};
+
+	private final AnalyzerFactory factory;
+	private final List<BeaconAnalyzer> analyzers;
+	private ThreadLocal<BeaconAnalyzer> workerAnalyzer;
+	private ButtonDetectionMethod buttonMethod;
+	private int threads, maxDetections;
+	private double minOverlap;
+	private List<ImageResult> results;
+
+	public BatchEvaluator() {
+		this(new AnalyzerFactory() {
+			@Override
+			public BeaconAnalyzer create() {
+				return new BeaconAnalyzer();
+			}
+		});
+	}
+
+	public BatchEvaluator(AnalyzerFactory factory) {
+		this.factory = factory;
+		this.analyzers = new ArrayList<BeaconAnalyzer>();
+		this.buttonMethod = ButtonDetectionMethod.BUTTON_ELLIPSE;
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.maxDetections = 1;
+		this.minOverlap = 0.5;
+		this.results = new ArrayList<ImageResult>();
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setButtonMethod(ButtonDetectionMethod buttonMethod) {
+		this.buttonMethod = buttonMethod;
+	}
+
+	public void setMaxDetections(int maxDetections) {
+		this.maxDetections = maxDetections;
+	}
+
+	public void setMinOverlap(double minOverlap) {
+		this.minOverlap = minOverlap;
+	}
+
+	public List<ImageResult> getResults() {
+		return results;
+	}
+
+	public Summary evaluate(File imageDir, File labelFile) throws IOException {
+		return evaluate(imageDir, BeaconLabel.read(labelFile));
+	}
+
+	public Summary evaluate(final File imageDir, Map<String, List<BeaconLabel>> labels) {
+		workerAnalyzer = new ThreadLocal<BeaconAnalyzer>() {
+			@Override
+			protected BeaconAnalyzer initialValue() {
+				BeaconAnalyzer analyzer = factory.create();
+				analyzer.getStats().setEnabled(true);
+				synchronized (analyzers) {
+					analyzers.add(analyzer);
+				}
+				return analyzer;
+			}
+		};
+
+		List<Callable<ImageResult>> tasks = new ArrayList<Callable<ImageResult>>();
+		for (final Map.Entry<String, List<BeaconLabel>> entry : labels.entrySet()) {
+			tasks.add(new Callable<ImageResult>() {
+				@Override
+				public ImageResult call() throws IOException {
+					return evaluateImage(new File(imageDir, entry.getKey()), entry.getKey(), entry.getValue());
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		List<ImageResult> imageResults = new ArrayList<ImageResult>();
+		long start = System.nanoTime();
+		try {
+			for (Future<ImageResult> future : executor.invokeAll(tasks)) {
+				imageResults.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while evaluating images", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("image evaluation failed", e.getCause());
+		} finally {
+			executor.shutdown();
+			synchronized (analyzers) {
+				for (BeaconAnalyzer analyzer : analyzers) {
+					analyzer.release();
+				}
+				analyzers.clear();
+			}
+		}
+		long wallNanos = System.nanoTime() - start;
+
+		results = imageResults;
+		return new Summary(imageResults, wallNanos);
+	}
+
+	private ImageResult evaluateImage(File file, String name, List<BeaconLabel> labels) throws IOException {
+		Mat image = Imgcodecs.imread(file.getPath());
+		if (image.empty()) {
+			throw new IOException("unable to read " + file);
+		}
+
+		BeaconAnalyzer analyzer = workerAnalyzer.get();
+		// detections are in working resolution pixels, labels in original image pixels
+		Size workingSize = new Size();
+		BeaconAnalyzer.getSmallSize(image.cols(), image.rows(), analyzer.getResolution(), workingSize);
+		double scale = image.cols() / workingSize.width;
+
+		PipelineStats stats = analyzer.getStats();
+		stats.reset();
+		List<Beacon> beacons = new ArrayList<Beacon>();
+		long start = System.nanoTime();
+		analyzer.analyze(image, buttonMethod, beacons);
+		long analysisMicros = (System.nanoTime() - start) / 1000;
+		NativeMemory.release(image);
+
+		Map<PipelineStats.Stage, Long> stageMicros = new EnumMap<PipelineStats.Stage, Long>(PipelineStats.Stage.class);
+		for (PipelineStats.Stage stage : PipelineStats.Stage.values()) {
+			stageMicros.put(stage, stats.getHistogram(stage).getTotal());
+		}
+
+		Collections.sort(beacons, rankComparator);
+		boolean[] labelMatched = new boolean[labels.size()];
+		List<Detection> detections = new ArrayList<Detection>();
+		int truePositives = 0;
+		for (int i = 0; i < Math.min(maxDetections, beacons.size()); i++) {
+			Beacon beacon = beacons.get(i);
+			Rect workingBounds = beacon.getBounds().boundingRect();
+			Rect bounds = new Rect((int) Math.round(workingBounds.x * scale), (int) Math.round(workingBounds.y * scale),
+					(int) Math.round(workingBounds.width * scale), (int) Math.round(workingBounds.height * scale));
+			String colors = BeaconLabel.getColors(beacon);
+
+			int bestLabel = -1;
+			double bestOverlap = minOverlap;
+			for (int j = 0; j < labels.size(); j++) {
+				if (labelMatched[j] || !labels.get(j).getColors().equals(colors)) {
+					continue;
+				}
+				double overlap = BeaconLabel.overlap(bounds, labels.get(j).getBounds());
+				if (overlap >= bestOverlap) {
+					bestOverlap = overlap;
+					bestLabel = j;
+				}
+			}
+			if (bestLabel >= 0) {
+				labelMatched[bestLabel] = true;
+				truePositives++;
+			}
+
+			Beacon.Score score = beacon.getScore();
+			detections.add(new Detection(colors, bounds, score.toString(), score.getNumericScore(), bestLabel >= 0));
+		}
+
+		return new ImageResult(name, detections, truePositives, detections.size() - truePositives,
+				labels.size() - truePositives, analysisMicros, stageMicros);
+	}
+
+	/**
+	 * Writes one tab-separated line per image: file, analysis time (us), tp, fp, fn, the
+	 * detections ({@code colors x y w h score numericScore matched}, separated by {@code ;})
+	 * and the nonzero stage times ({@code STAGE=us}, separated by {@code ,}).
+	 */
+	public void writeResults(File resultsFile) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(resultsFile));
+		try {
+			writer.println("# file\tmicros\ttp\tfp\tfn\tdetections\tstages");
+			for (ImageResult result : results) {
+				StringBuilder detections = new StringBuilder();
+				for (Detection detection : result.detections) {
+					if (detections.length() > 0) {
+						detections.append(';');
+					}
+					Rect r = detection.bounds;
+					detections.append(String.format("%s %d %d %d %d %s %d %s", detection.colors, r.x, r.y, r.width, r.height,
+							detection.score.isEmpty() ? "-" : detection.score, detection.numericScore, detection.matched ? "tp" : "fp"));
+				}
+				StringBuilder stages = new StringBuilder();
+				for (Map.Entry<PipelineStats.Stage, Long> entry : result.stageMicros.entrySet()) {
+					if (entry.getValue() > 0) {
+						if (stages.length() > 0) {
+							stages.append(',');
+						}
+						stages.append(entry.getKey()).append('=').append(entry.getValue());
+					}
+				}
+				writer.println(result.file + "\t" + result.analysisMicros + "\t" + result.truePositives + "\t" + result.falsePositives
+						+ "\t" + result.falseNegatives + "\t" + detections + "\t" + stages);
+			}
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError()) {
+			throw new IOException("unable to write " + resultsFile);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: BatchEvaluator <image dir> [label file] [results file]");
+			System.exit(1);
+		}
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+		File imageDir = new File(args[0]);
+		File labelFile = args.length > 1 ? new File(args[1]) : new File(imageDir, "labels.txt");
+		File resultsFile = args.length > 2 ? new File(args[2]) : new File("evaluation.tsv");
+
+		BatchEvaluator evaluator = new BatchEvaluator();
+		Summary summary = evaluator.evaluate(imageDir, labelFile);
+		evaluator.writeResults(resultsFile);
+		System.out.print(summary);
+	}
+
+}
@@ -2,7 +2,6 @@ package com.acmerobotics.library.vision;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
@@ -28,7 +27,7 @@ public class Beacon {
 		}
 	}
 
-	public class Score {
+	public static class Score {
 		public final double ratioError;
 		public final double areaError;
 		public final int leftButtons;
@@ -50,8 +49,8 @@ public class Beacon {
 			score = 0;
 			scoreString = "";
 			
-			if (ratioError < 0.05) {
-				score += 2;
+			if (ratioError < MAX_RATIO_ERROR) {
+				score += RATIO_SCORE;
 				scoreString += "A";
 			}
 			
@@ -102,9 +101,38 @@ public class Beacon {
 	public static final double BEACON_BOTTOM_HEIGHT = 1.1;
 	public static final double PARTIAL_BEACON_WH_RATIO = BEACON_WIDTH / (BEACON_HEIGHT - BEACON_BOTTOM_HEIGHT);
 	public static final double FULL_BEACON_WH_RATIO = BEACON_WIDTH / BEACON_HEIGHT;
+
+	// squared aspect ratio error below which a beacon scores RATIO_SCORE
+	public static final double MAX_RATIO_ERROR = 0.05;
+	public static final int RATIO_SCORE = 2;
+
+	// upper bound of Score.getNumericScore() for the given button counts (rightButtons is -1 for single regions)
+	public static int getMaxScore(int leftButtons, int rightButtons) {
+		int score = 3;
+		if (rightButtons == -1) {
+			if (leftButtons == 2) {
+				score += 4;
+			} else if (leftButtons > 0) {
+				score += 1;
+			}
+		} else {
+			if (leftButtons == 1) {
+				score += 2;
+			} else if (leftButtons > 1) {
+				score += 1;
+			}
+			if (rightButtons == 1) {
+				score += 2;
+			} else if (rightButtons > 1) {
+				score += 1;
+			}
+		}
+		return score;
+	}
 	
 	private List<BeaconRegion> beaconRegions;
 	private RotatedRect bounds;
+	private double boundsArea;
 	private Score score;
 	
 	public Beacon(BeaconRegion center) {
@@ -129,23 +157,14 @@ public class Beacon {
 		calculateScore();
 	}
 	
-	private void calculateBoundsTwoRegions(BeaconRegion leftRegion, BeaconRegion rightRegion) {
-		List<Point> allPoints = new ArrayList<Point>();
-		List<Point> leftPoints = leftRegion.getContour().toList();
-		List<Point> rightPoints = rightRegion.getContour().toList();
-		allPoints.addAll(leftPoints);
-		allPoints.addAll(rightPoints);
-		MatOfPoint2f points = new MatOfPoint2f();
-		points.fromList(allPoints);
-		bounds = Imgproc.minAreaRect(points);
-	}
-	
 	public void calculateScore() {
+		boundsArea = bounds.size.width * bounds.size.height;
+
         double partialError = getAspectRatioError(bounds.size, PARTIAL_BEACON_WH_RATIO);
         double fullError = getAspectRatioError(bounds.size, FULL_BEACON_WH_RATIO);
         double aspectRatioError = Math.min(partialError, fullError);
 
-		double totalArea = bounds.size.width * bounds.size.height;
+		double totalArea = boundsArea;
 		double leftArea = getLeftRegion().area();
 		double rightArea = getRightRegion().area();
 
@@ -186,6 +205,10 @@ public class Beacon {
 	public RotatedRect getBounds() {
 		return this.bounds;
 	}
+
+	public double getBoundsArea() {
+		return boundsArea;
+	}
 	
 	public List<Circle> getButtons() {
 		List<Circle> buttons = new ArrayList<Circle>();
@@ -207,23 +230,18 @@ public class Beacon {
 		Util.drawRotatedRect(image, bounds, new Scalar(255, 255, 0), 2);
 	}
 
-    public void release() {
-        if (beaconRegions != null) {
-            for (BeaconRegion region : beaconRegions) {
-                region.release();
-            }
-            beaconRegions = null;
-        }
-    }
+	/**
+	 * @deprecated the regions (and their native contours) are shared between candidate beacons
+	 * and owned by the analyzer that found them, which releases them at the start of its next
+	 * frame; this no longer does anything. Use {@link DetectedBeacon} to keep results.
+	 */
+	@Deprecated
+	public void release() {
+	}
 
 	@Override
 	public String toString() {
 		return getLeftRegion().getColor() + "/" + getRightRegion().getColor();
 	}
-
-    @Override
-    public void finalize() {
-        release();
-    }
 	
 }
@@ -2,240 +2,884 @@ package com.acmerobotics.library.vision;
 
 import com.acmerobotics.library.vision.Beacon.BeaconColor;
 
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Point;
 import org.opencv.core.Rect;
-import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Finds beacons in BGR images. Each instance owns its own detectors, scratch buffers and
+ * debug intermediates so separate instances may be used concurrently (e.g. one per camera
+ * thread). A single instance must not be shared between threads without external locking.
+ * The static methods delegate to a shared default instance and are synchronized.
+ * <p>
+ * The {@link Beacon}s returned by {@link #analyze} share {@link BeaconRegion}s whose contours
+ * are owned by this analyzer and released at the start of its next frame (and by
+ * {@link #release()}). Their plain-Java geometry remains valid, but anything kept past the
+ * next frame should be converted to {@link DetectedBeacon}s, e.g. with {@link #detect}.
+ * <p>
+ * When an executor is supplied with {@link #setExecutor(ExecutorService)}, the per-color
+ * region searches run concurrently on it and are joined before pairing.
+ */
+public class BeaconAnalyzer implements AutoCloseable {
+
+	/**
+	 * Receives copies of the images produced along the way, e.g. masks, for debugging. The
+	 * analyzer only writes to it; see {@link DebugIntermediates} and {@link IntermediateCapture}.
+	 */
+	public interface AnalysisIntermediates {
+		// name is the key without its color suffix, e.g. "detector_mask"
+		boolean captures(String name);
+
+		// stores a copy of mat, which the caller keeps ownership of; the return value is unused
+		Mat put(String key, Mat mat);
+	}
+
+	// keeps the latest copy of every intermediate, read back with the Map methods
+	public static class DebugIntermediates extends HashMap<String, Mat> implements AnalysisIntermediates {
+		private static final long serialVersionUID = 1L;
 
-public class BeaconAnalyzer {
+		@Override
+		public boolean captures(String name) {
+			return true;
+		}
 
-	public static class AnalysisIntermediates extends HashMap<String, Mat> {
 		@Override
-		public Mat put(String s, Mat mat) {
+		public synchronized Mat put(String s, Mat mat) {
 			if (!super.containsKey(s)) {
-				super.put(s, new Mat());
+				super.put(s, NativeMemory.newMat("BeaconAnalyzer"));
 			}
 			mat.copyTo(super.get(s));
 			return null;
 		}
 	}
 
-	private static ColorDetector redDetector, blueDetector;
-	private static List<BeaconRegion> redRegions, blueRegions, allRegions;
-	static AnalysisIntermediates intermediates;
-    static BeaconColor currentColor;
     public static boolean DEBUG = false;
 
+	public static final int MIN_BEACON_SCORE = 5;
+
+	// the resolution (longest side) that the size-dependent parameters were tuned at
+	public static final int REFERENCE_RESOLUTION = 640;
+
 	public enum ButtonDetectionMethod {
 		BUTTON_HOUGH,
 		BUTTON_ELLIPSE
 	}
 
-	public static void analyzeImage(Mat image, List<Beacon> beacons) {
-		analyzeImage(image, ButtonDetectionMethod.BUTTON_ELLIPSE, beacons);
+	private static BeaconAnalyzer defaultAnalyzer;
+	private static final BeaconAreaComparator beaconAreaComparator = new BeaconAreaComparator();
+
+	private List<BeaconRegionFinder> regionFinders;
+	private List<BeaconRegion> allRegions;
+	private int[] sortedIndices;
+	private double[] sortedCenterX;
+	private long[] pairKeys;
+	private BeaconPairFilter pairFilter;
+	private ButtonDetector buttonDetector;
+	private DebugIntermediates intermediates;
+	private FrameContext frame;
+	private ColorClassifier classifier;
+	private ExecutorService executor;
+	private PipelineStats stats;
+	private IntermediateCapture capture;
+	private FrameRecorder recorder;
+	private boolean debug;
+
+	private int resolution;
+	private long latencyBudgetNanos;
+	private int[] resolutionSteps;
+	private int resolutionStep, framesAtResolution;
+	private double averageLatencyNanos;
+
+	private boolean preserveInput;
+	private Mat workingImage;
+	private Size workingSize;
+
+	private boolean trackingEnabled;
+	private double trackingPadding;
+	private int fullSearchInterval, framesSinceFullSearch;
+	private Rect trackingRoi;
+
+	private TileGrid tiles;
+	private boolean regionScopedButtons;
+
+	private FrameSignature signature;
+	private double reuseThreshold, lastFrameChange;
+	private int maxStaleFrames, staleFrames;
+	private List<Beacon> previousBeacons, detectBeacons;
+
+	public BeaconAnalyzer() {
+		this(getDefaultRedRange(), getDefaultBlueRange());
+	}
+
+	public BeaconAnalyzer(ScalarRange redRange, ScalarRange blueRange) {
+		regionFinders = new ArrayList<BeaconRegionFinder>();
+		allRegions = new ArrayList<BeaconRegion>();
+		sortedIndices = new int[16];
+		sortedCenterX = new double[16];
+		pairKeys = new long[64];
+		pairFilter = new BeaconPairFilter();
+		buttonDetector = new ButtonDetector();
+		intermediates = new DebugIntermediates();
+		stats = new PipelineStats();
+		frame = new FrameContext();
+		frame.setStats(stats);
+		workingImage = NativeMemory.newMat("BeaconAnalyzer");
+		workingSize = new Size();
+		resolution = REFERENCE_RESOLUTION;
+		trackingPadding = 0.5;
+		fullSearchInterval = 10;
+		signature = new FrameSignature();
+		maxStaleFrames = 30;
+		previousBeacons = new ArrayList<Beacon>();
+		detectBeacons = new ArrayList<Beacon>();
+
+		addColor(redRange, BeaconColor.RED);
+		addColor(blueRange, BeaconColor.BLUE);
+	}
+
+	public static ScalarRange getDefaultRedRange() {
+		ScalarRange red = new ScalarRange();
+		red.add(new Scalar(145, 0, 160), new Scalar(180, 255, 255));
+		red.add(new Scalar(0, 0, 160), new Scalar(10, 255, 255));
+		return red;
+	}
+
+	public static ScalarRange getDefaultBlueRange() {
+		ScalarRange blue = new ScalarRange();
+		blue.add(new Scalar(90, 40, 180), new Scalar(125, 255, 255));
+		return blue;
+	}
+
+	private static BeaconAnalyzer getDefaultAnalyzer() {
+		if (defaultAnalyzer == null) {
+			defaultAnalyzer = new BeaconAnalyzer();
+		}
+		return defaultAnalyzer;
+	}
+
+	public static synchronized void analyzeImage(Mat image, List<Beacon> beacons) {
+		getDefaultAnalyzer().analyze(image, beacons);
+	}
+
+	public static synchronized void analyzeImage(Mat image, ButtonDetectionMethod buttonMethod, List<Beacon> beacons) {
+		getDefaultAnalyzer().analyze(image, buttonMethod, beacons);
+	}
+
+	public static synchronized void findBeaconRegions(Mat image, ColorDetector detector, BeaconColor color, ButtonDetectionMethod method, List<BeaconRegion> beaconRegions) {
+		getDefaultAnalyzer().detectBeaconRegions(image, detector, color, method, beaconRegions);
+	}
+
+	public static synchronized List<Circle> findButtons(Mat gray, ButtonDetectionMethod method) {
+		return getDefaultAnalyzer().detectButtons(gray, method);
+	}
+
+	public static synchronized List<Circle> findButtonsHough(Mat gray) {
+		return getDefaultAnalyzer().detectButtonsHough(gray);
+	}
+
+	public static synchronized List<Circle> findButtonsEllipse(Mat gray) {
+		return getDefaultAnalyzer().detectButtonsEllipse(gray);
+	}
+
+	public static synchronized Map<String, Mat> getIntermediates() {
+		return getDefaultAnalyzer().getAnalysisIntermediates();
+	}
+
+	public static Size getSmallSize(Size big, int maxDimension) {
+		Size small = new Size();
+		getSmallSize(big.width, big.height, maxDimension, small);
+		return small;
+	}
+
+	public static void getSmallSize(double width, double height, int maxDimension, Size small) {
+		if (width > height) {
+			small.width = maxDimension;
+			small.height = height * maxDimension / width;
+		} else {
+			small.width = width * maxDimension / height;
+			small.height = maxDimension;
+		}
+	}
+
+	public void analyze(Mat image, List<Beacon> beacons) {
+		analyze(image, ButtonDetectionMethod.BUTTON_ELLIPSE, beacons);
+	}
+
+	public void analyze(Mat image, ButtonDetectionMethod buttonMethod, List<Beacon> beacons) {
+		long frameStart = stats.start();
+		stats.beginFrame();
+		if (capture != null) {
+			capture.beginFrame();
+		}
+		// copied before the analysis resizes the frame in place
+		if (recorder != null) {
+			recorder.beginFrame(image);
+		}
+		int firstBeacon = beacons.size();
+		if (reuseThreshold > 0) {
+			lastFrameChange = signature.compare(image);
+			if (lastFrameChange < reuseThreshold && staleFrames < maxStaleFrames) {
+				staleFrames++;
+				// leave the caller's image resized just like an analyzed frame, as the beacons are in working coordinates
+				if (!preserveInput) {
+					toWorkingSize(image);
+				}
+				beacons.addAll(previousBeacons);
+				stats.count(PipelineStats.Counter.REUSED_FRAMES, 1);
+				endFrame(frameStart, beacons, firstBeacon);
+				return;
+			}
+			signature.accept();
+		}
+		staleFrames = 0;
+		if (latencyBudgetNanos > 0) {
+			long start = System.nanoTime();
+			analyzeFrame(image, buttonMethod, beacons);
+			adaptResolution(System.nanoTime() - start);
+		} else {
+			analyzeFrame(image, buttonMethod, beacons);
+		}
+		if (reuseThreshold > 0) {
+			previousBeacons.clear();
+			previousBeacons.addAll(beacons.subList(firstBeacon, beacons.size()));
+		}
+		endFrame(frameStart, beacons, firstBeacon);
+	}
+
+	private void endFrame(long frameStart, List<Beacon> beacons, int firstBeacon) {
+		if (recorder != null) {
+			recorder.endFrame(beacons.subList(firstBeacon, beacons.size()));
+		}
+		stats.endFrame(frameStart);
 	}
 
-	public static void analyzeImage(Mat image, ButtonDetectionMethod buttonMethod, List<Beacon> beacons) {
+	// like analyze() but returns self-contained results that stay valid after the next frame
+	public void detect(Mat image, ButtonDetectionMethod buttonMethod, List<DetectedBeacon> results) {
+		detectBeacons.clear();
+		analyze(image, buttonMethod, detectBeacons);
+		DetectedBeacon.fromBeacons(detectBeacons, results);
+		detectBeacons.clear();
+	}
 
-		if (intermediates == null) {
-			intermediates = new AnalysisIntermediates();
+	private void adaptResolution(long latencyNanos) {
+		if (framesAtResolution == 0) {
+			averageLatencyNanos = latencyNanos;
+		} else {
+			averageLatencyNanos = 0.8 * averageLatencyNanos + 0.2 * latencyNanos;
 		}
+		framesAtResolution++;
 
-		if (redDetector == null || blueDetector == null) {
-			ScalarRange red = new ScalarRange();
-			red.add(new Scalar(145, 0, 160), new Scalar(180, 255, 255));
-			red.add(new Scalar(0, 0, 160), new Scalar(10, 255, 255));
+		// give the average a few frames to settle after every change
+		if (framesAtResolution < 5) {
+			return;
+		}
 
-			ScalarRange blue = new ScalarRange();
-			blue.add(new Scalar(90, 40, 180), new Scalar(125, 255, 255));
+		if (averageLatencyNanos > latencyBudgetNanos && resolutionStep > 0) {
+			setResolutionStep(resolutionStep - 1);
+		} else if (resolutionStep < resolutionSteps.length - 1) {
+			// cost grows with the pixel count, so only step up with enough headroom
+			double ratio = (double) resolutionSteps[resolutionStep + 1] / resolutionSteps[resolutionStep];
+			if (averageLatencyNanos * ratio * ratio < 0.8 * latencyBudgetNanos) {
+				setResolutionStep(resolutionStep + 1);
+			}
+		}
+	}
+
+	private void setResolutionStep(int step) {
+		resolutionStep = step;
+		framesAtResolution = 0;
+		setResolution(resolutionSteps[step]);
+	}
 
-			redDetector = new ColorDetector(red);
-			blueDetector = new ColorDetector(blue);
+	// the frame at the working resolution, resized in place unless the input is preserved
+	private Mat toWorkingSize(Mat image) {
+		getSmallSize(image.cols(), image.rows(), resolution, workingSize);
+		if (preserveInput) {
+			Imgproc.resize(image, workingImage, workingSize);
+			return workingImage;
 		}
+		Imgproc.resize(image, image, workingSize);
+		return image;
+	}
+
+	private void analyzeFrame(Mat image, ButtonDetectionMethod buttonMethod, List<Beacon> beacons) {
+		Mat working = toWorkingSize(image);
+
+		int firstBeacon = beacons.size();
+		if (trackingEnabled && trackingRoi != null && framesSinceFullSearch < fullSearchInterval
+				&& trackingRoi.x + trackingRoi.width <= working.cols() && trackingRoi.y + trackingRoi.height <= working.rows()) {
+			framesSinceFullSearch++;
 
-		if (redRegions == null || blueRegions == null) {
-			redRegions = new ArrayList<BeaconRegion>();
-			blueRegions = new ArrayList<BeaconRegion>();
+			Mat roiImage = working.submat(trackingRoi);
+			frame.setImage(roiImage, trackingRoi.x, trackingRoi.y);
+			findAllRegions(frame, buttonMethod, allRegions);
+			pairRegions(allRegions, beacons);
+			NativeMemory.release(roiImage);
+
+			if (beacons.size() > firstBeacon) {
+				updateTracking(working, beacons, firstBeacon);
+				return;
+			}
 		}
 
-		Imgproc.resize(image, image, getSmallSize(image.size(), 640));
+		frame.setImage(working);
+		findAllRegions(frame, buttonMethod, allRegions);
+		pairRegions(allRegions, beacons);
+		framesSinceFullSearch = 0;
 
-		findBeaconRegions(image, redDetector, BeaconColor.RED, buttonMethod, redRegions);
-		findBeaconRegions(image, blueDetector, BeaconColor.BLUE, buttonMethod, blueRegions);
+		updateTracking(working, beacons, firstBeacon);
+	}
 
-		if (allRegions == null) {
-			allRegions = new ArrayList<BeaconRegion>();
+	public void pairRegions(List<BeaconRegion> regions, List<Beacon> beacons) {
+		long start = stats.start();
+		if (pairFilter == null) {
+			pairAllRegions(regions, beacons);
 		} else {
-			allRegions.clear();
+			pairNeighboringRegions(regions, beacons);
 		}
+		stats.record(PipelineStats.Stage.PAIRING, start);
+	}
+
+	private void pairNeighboringRegions(List<BeaconRegion> regions, List<Beacon> beacons) {
+		// sweep over the regions in order of center x so only horizontal neighbors are compared
+		int numRegions = regions.size();
+		sortByCenterX(regions);
 
-		allRegions.addAll(redRegions);
-		allRegions.addAll(blueRegions);
+		double maxRadius = 0, maxExtent = 0;
+		for (BeaconRegion region : regions) {
+			maxRadius = Math.max(maxRadius, BeaconPairFilter.getRadius(region));
+			maxExtent = Math.max(maxExtent, BeaconPairFilter.getExtent(region));
+		}
 
-		int numRegions = allRegions.size();
+		int numPairs = 0;
 		for (int i = 0; i < numRegions; i++) {
-			BeaconRegion region1 = allRegions.get(i);
+			int index1 = sortedIndices[i];
+			BeaconRegion region1 = regions.get(index1);
+			if (pairFilter.accept(region1)) {
+				numPairs = addPairKey(index1, index1, numRegions, numPairs);
+			}
+
+			double maxX = sortedCenterX[i] + pairFilter.getMaxReach(region1, maxRadius, maxExtent);
+			boolean bounded = pairFilter.isDistanceBounded(region1);
+			for (int j = i + 1; j < numRegions; j++) {
+				if (sortedCenterX[j] > maxX && bounded) {
+					break;
+				}
+				int index2 = sortedIndices[j];
+				BeaconRegion region2 = regions.get(index2);
+				if (pairFilter.accept(region1, region2)) {
+					numPairs = addPairKey(index1, index2, numRegions, numPairs);
+				}
+			}
+		}
+
+		// build the beacons in the same order as pairAllRegions() does
+		Arrays.sort(pairKeys, 0, numPairs);
+		for (int k = 0; k < numPairs; k++) {
+			int i = (int) (pairKeys[k] / numRegions), j = (int) (pairKeys[k] % numRegions);
+			if (i == j) {
+				addIfScored(new Beacon(regions.get(i)), beacons);
+			} else {
+				addIfScored(new Beacon(regions.get(i), regions.get(j)), beacons);
+			}
+		}
+	}
+
+	// fills sortedIndices and sortedCenterX in order of center x, ties in index order
+	private void sortByCenterX(List<BeaconRegion> regions) {
+		int numRegions = regions.size();
+		if (sortedIndices.length < numRegions) {
+			sortedIndices = new int[2 * numRegions];
+			sortedCenterX = new double[2 * numRegions];
+		}
+		// insertion sort, as there are only a handful of regions and it doesn't box the indices
+		for (int i = 0; i < numRegions; i++) {
+			double x = regions.get(i).getBounds().center.x;
+			int j = i;
+			while (j > 0 && sortedCenterX[j - 1] > x) {
+				sortedIndices[j] = sortedIndices[j - 1];
+				sortedCenterX[j] = sortedCenterX[j - 1];
+				j--;
+			}
+			sortedIndices[j] = i;
+			sortedCenterX[j] = x;
+		}
+	}
+
+	private int addPairKey(int index1, int index2, int numRegions, int numPairs) {
+		if (numPairs == pairKeys.length) {
+			pairKeys = Arrays.copyOf(pairKeys, 2 * numPairs);
+		}
+		pairKeys[numPairs] = (long) Math.max(index1, index2) * numRegions + Math.min(index1, index2);
+		return numPairs + 1;
+	}
+
+	private void pairAllRegions(List<BeaconRegion> regions, List<Beacon> beacons) {
+		int numRegions = regions.size();
+		for (int i = 0; i < numRegions; i++) {
+			BeaconRegion region1 = regions.get(i);
 			for (int j = 0; j <= i; j++) {
-				BeaconRegion region2 = allRegions.get(j);
+				BeaconRegion region2 = regions.get(j);
 				Beacon newBeacon;
 				if (region1.equals(region2)) {
 					newBeacon = new Beacon(region1);
 				} else {
 					newBeacon = new Beacon(region1, region2);
 				}
-				if (newBeacon.getScore().getNumericScore() >= 5) beacons.add(newBeacon);
+				addIfScored(newBeacon, beacons);
 			}
 		}
 	}
 
-	public static Size getSmallSize(Size big, int maxDimension) {
-		if (big.width > big.height) {
-			return new Size(maxDimension, big.height * maxDimension / big.width);
-		} else {
-			return new Size(big.width * maxDimension / big.height, maxDimension);
+	private void addIfScored(Beacon beacon, List<Beacon> beacons) {
+		stats.count(PipelineStats.Counter.CANDIDATE_PAIRS, 1);
+		if (beacon.getScore().getNumericScore() >= MIN_BEACON_SCORE) {
+			beacons.add(beacon);
+			stats.count(PipelineStats.Counter.BEACONS, 1);
 		}
 	}
 
-	public static void findBeaconRegions(Mat image, ColorDetector detector, BeaconColor color, ButtonDetectionMethod method, List<BeaconRegion> beaconRegions) {
-        currentColor = color;
+	private void updateTracking(Mat image, List<Beacon> beacons, int firstBeacon) {
+		if (!trackingEnabled) {
+			return;
+		}
 
-		detector.analyzeImage(image);
-		List<ColorRegion> regions = detector.getRegions();
+		Beacon best = null;
+		for (int i = firstBeacon; i < beacons.size(); i++) {
+			Beacon beacon = beacons.get(i);
+			if (best == null || beacon.getScore().getNumericScore() > best.getScore().getNumericScore()
+					|| (beacon.getScore().getNumericScore() == best.getScore().getNumericScore() && beaconAreaComparator.compare(beacon, best) < 0)) {
+				best = beacon;
+			}
+		}
 
-		if (DEBUG) {
-			Mat temp = new Mat();
-			image.copyTo(temp);
-			ColorRegion.drawRegions(temp, regions, color == BeaconColor.RED ? new Scalar(0, 0, 255) : new Scalar(255, 0, 0), 2);
-			intermediates.put("beacon_regions_" + color, temp);
-			temp.release();
+		if (best == null) {
+			trackingRoi = null;
+			return;
 		}
 
-		Mat gray = new Mat();
-		Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
-		detector.clipRegion(gray, gray);
+		Rect bounds = best.getBounds().boundingRect();
+		int padX = (int) (bounds.width * trackingPadding);
+		int padY = (int) (bounds.height * trackingPadding);
+		int left = Math.max(0, bounds.x - padX);
+		int top = Math.max(0, bounds.y - padY);
+		int right = Math.min(image.cols(), bounds.x + bounds.width + padX);
+		int bottom = Math.min(image.rows(), bounds.y + bounds.height + padY);
+		if (right <= left || bottom <= top) {
+			trackingRoi = null;
+		} else {
+			trackingRoi = new Rect(left, top, right - left, bottom - top);
+		}
+	}
 
-		Imgproc.threshold(gray, gray, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
-		Mat bg = detector.getMask();
-		Core.bitwise_and(gray, bg, gray);
+	public void findAllRegions(FrameContext frame, ButtonDetectionMethod method, List<BeaconRegion> regions) {
+		AnalysisIntermediates debugIntermediates = getActiveIntermediates();
 
-		if (DEBUG) intermediates.put("thresholded_regions_" + color, gray);
+		regions.clear();
+		// in tiled and region-scoped modes the executor is busy with the work of one color at a time
+		if (executor == null || regionFinders.size() < 2 || tiles != null || regionScopedButtons) {
+			for (BeaconRegionFinder finder : regionFinders) {
+				regions.addAll(finder.findRegions(frame, method, debugIntermediates));
+			}
+			stats.count(PipelineStats.Counter.REGIONS, regions.size());
+			return;
+		}
 
-		List<Circle> buttons = findButtons(gray, method);
+		List<Callable<List<BeaconRegion>>> tasks = new ArrayList<Callable<List<BeaconRegion>>>();
+		for (BeaconRegionFinder finder : regionFinders) {
+			tasks.add(finder.newTask(frame, method, debugIntermediates));
+		}
 
-		beaconRegions.clear();
+		try {
+			List<Future<List<BeaconRegion>>> results = executor.invokeAll(tasks);
+			for (Future<List<BeaconRegion>> result : results) {
+				regions.addAll(result.get());
+			}
+			stats.count(PipelineStats.Counter.REGIONS, regions.size());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while finding beacon regions", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("beacon region search failed", e.getCause());
+		}
+	}
 
-		for (ColorRegion region : regions) {
-			BeaconRegion beaconRegion = new BeaconRegion(region, color);
-			for (Circle button : buttons) {
-				if (beaconRegion.getBounds().boundingRect().contains(button.pt)) beaconRegion.addButton(button);
+	public void detectBeaconRegions(Mat image, ColorDetector detector, BeaconColor color, ButtonDetectionMethod method, List<BeaconRegion> beaconRegions) {
+		AnalysisIntermediates debugIntermediates = getActiveIntermediates();
+		frame.setImage(image);
+		for (BeaconRegionFinder finder : regionFinders) {
+			if (finder.getDetector() == detector && finder.getColor() == color) {
+				finder.findRegions(frame, method, debugIntermediates, beaconRegions);
+				return;
 			}
-			beaconRegions.add(beaconRegion);
 		}
+
+		BeaconRegionFinder finder = new BeaconRegionFinder(detector, color);
+		finder.findRegions(frame, method, debugIntermediates, beaconRegions);
+		finder.releaseBuffers();
 	}
 
-	public static List<Circle> findButtons(Mat gray, ButtonDetectionMethod method) {
-		if (method == ButtonDetectionMethod.BUTTON_HOUGH) {
-			return findButtonsHough(gray);
-		} else if (method == ButtonDetectionMethod.BUTTON_ELLIPSE) {
-			return findButtonsEllipse(gray);
-		} else {
-			throw new RuntimeException("unknown button detection method: " + method.toString());
+	public List<Circle> detectButtons(Mat gray, ButtonDetectionMethod method) {
+		buttonDetector.setIntermediates(getActiveIntermediates(), BeaconColor.UNKNOWN.toString());
+		return buttonDetector.findButtons(gray, method);
+	}
+
+	public List<Circle> detectButtonsHough(Mat gray) {
+		buttonDetector.setIntermediates(getActiveIntermediates(), BeaconColor.UNKNOWN.toString());
+		return buttonDetector.findButtonsHough(gray);
+	}
+
+	public List<Circle> detectButtonsEllipse(Mat gray) {
+		buttonDetector.setIntermediates(getActiveIntermediates(), BeaconColor.UNKNOWN.toString());
+		return buttonDetector.findButtonsEllipse(gray);
+	}
+
+	public BeaconRegionFinder addColor(ScalarRange range, BeaconColor color) {
+		BeaconRegionFinder finder = new BeaconRegionFinder(new ColorDetector(range), color);
+		finder.setStats(stats);
+		finder.setScale((double) resolution / REFERENCE_RESOLUTION);
+		if (tiles != null) {
+			finder.setTiling(tiles, executor);
 		}
+		finder.setRegionScopedButtons(regionScopedButtons, executor);
+		regionFinders.add(finder);
+		if (classifier != null) {
+			compileClassifier();
+		}
+		invalidatePreviousFrame();
+		return finder;
 	}
 
-	public static List<Circle> findButtonsHough(Mat gray) {
-		Mat temp = new Mat();
-		Imgproc.GaussianBlur(gray, temp, new Size(9, 9), 2);
+	/**
+	 * Enables single-pass thresholding: the ranges of every color are compiled into one
+	 * {@link ColorClassifier} that labels each frame once, and each color's mask is derived
+	 * from the label image. Call again after changing a detector's range to recompile.
+	 */
+	public void setClassifierEnabled(boolean enabled) {
+		if (enabled) {
+			if (classifier == null) {
+				classifier = new ColorClassifier();
+			}
+			compileClassifier();
+			frame.setClassifier(classifier);
+		} else {
+			frame.setClassifier(null);
+			for (BeaconRegionFinder finder : regionFinders) {
+				finder.getDetector().setClassLabel(0);
+			}
+			if (classifier != null) {
+				classifier.release();
+				classifier = null;
+			}
+		}
+		invalidatePreviousFrame();
+	}
 
-		Mat circles = new Mat();
-		Imgproc.HoughCircles(temp, circles, Imgproc.CV_HOUGH_GRADIENT, 1, 15, 200, 20, 0, 30);
+	public boolean isClassifierEnabled() {
+		return classifier != null;
+	}
 
-		List<Circle> circleList = new ArrayList<Circle>();
-		int numCircles = circles.cols();
-		for (int i = 0; i < numCircles; i++) {
-			Circle button = Circle.fromDoubleArray(circles.get(0, i));
-			circleList.add(button);
+	private void compileClassifier() {
+		classifier.clear();
+		for (BeaconRegionFinder finder : regionFinders) {
+			ColorDetector detector = finder.getDetector();
+			detector.setClassLabel(classifier.addClass(detector.getColorRange()));
 		}
+	}
 
-		return circleList;
+	public List<BeaconRegionFinder> getRegionFinders() {
+		return regionFinders;
 	}
 
-	public static List<Circle> findButtonsEllipse(Mat gray) {
-		List<Circle> circles = new ArrayList<Circle>();
+	/**
+	 * By default the input image is resized in place to the working resolution. When
+	 * {@code preserveInput} is set, the input is left untouched and the analyzer resizes into
+	 * its own buffer instead, so no native memory is allocated per frame once the buffers
+	 * have been sized by the first frame.
+	 */
+	public void setPreserveInput(boolean preserveInput) {
+		this.preserveInput = preserveInput;
+	}
 
-		Mat edges = new Mat();
-		int nonZero = Core.countNonZero(gray);
+	public boolean isPreserveInput() {
+		return preserveInput;
+	}
 
-		if (DEBUG) {
-			Mat temp = new Mat();
-			gray.copyTo(temp);
-			Imgproc.putText(temp, Integer.toString(nonZero), new Point(0, 30), Core.FONT_HERSHEY_SIMPLEX, 1, new Scalar(255), 2);
-			intermediates.put("buttons_" + currentColor, temp);
-			temp.release();
+	/**
+	 * Sets the working resolution (longest side in pixels) that frames are resized to. Kernel
+	 * sizes, blur sizes, Hough radii and the button pixel-count thresholds are scaled to match.
+	 */
+	public void setResolution(int resolution) {
+		if (resolution == this.resolution) {
+			return;
 		}
-//		 don't morphologically open unless there are enough white pixels
-		Mat kernel;
-		if (nonZero > 1700) {
-			kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(7, 7));
-		} else if (nonZero > 500) {
-			kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5));
-		}else {
-			kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
+		this.resolution = resolution;
+		double scale = (double) resolution / REFERENCE_RESOLUTION;
+		for (BeaconRegionFinder finder : regionFinders) {
+			finder.setScale(scale);
 		}
-		Imgproc.morphologyEx(gray, gray, Imgproc.MORPH_OPEN, kernel);
-		if (DEBUG) intermediates.put("button_smooth_" + currentColor, gray);
-		Imgproc.GaussianBlur(gray, gray, new Size(5, 5), 2);
-		Imgproc.Canny(gray, edges, 200, 100);
-
-		if (DEBUG) intermediates.put("button_edges_" + currentColor, edges);
+		buttonDetector.setScale(scale);
+		if (tiles != null) {
+			tiles.setScale(scale);
+		}
+		// the tracked ROI and any reused beacons are in working coordinates
+		resetTracking();
+		invalidatePreviousFrame();
+	}
 
-		List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
-		Imgproc.findContours(edges, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+	public int getResolution() {
+		return resolution;
+	}
 
-		edges.release();
+	/**
+	 * Picks the working resolution from {@code resolutions} (in increasing order) to keep the
+	 * average analysis time of a frame within {@code budgetNanos}: the resolution steps down
+	 * while over budget and steps up when the next step is predicted to fit. A budget of 0
+	 * disables adaptation and leaves the current resolution in place.
+	 */
+	public void setLatencyBudget(long budgetNanos, int... resolutions) {
+		latencyBudgetNanos = budgetNanos;
+		if (budgetNanos <= 0) {
+			return;
+		}
+		if (resolutions.length == 0) {
+			resolutions = new int[] {320, 480, REFERENCE_RESOLUTION, 960};
+		}
+		resolutionSteps = resolutions.clone();
+		Arrays.sort(resolutionSteps);
 
-        MatOfPoint2f ellipseContour = new MatOfPoint2f();
-		for (MatOfPoint contour : contours) {
-			// at least 5 points are needed to fit an ellipse
-			if (contour.rows() < 5) {
-				continue;
+		int closest = 0;
+		for (int i = 1; i < resolutionSteps.length; i++) {
+			if (Math.abs(resolutionSteps[i] - resolution) < Math.abs(resolutionSteps[closest] - resolution)) {
+				closest = i;
 			}
+		}
+		setResolutionStep(closest);
+	}
 
-			Rect boundingRect = Imgproc.boundingRect(contour);
-			double eccentricity = ((double) boundingRect.width) / boundingRect.height;
+	public long getLatencyBudget() {
+		return latencyBudgetNanos;
+	}
 
-			if (Math.abs(eccentricity - 1) <= 0.3) {
-                contour.convertTo(ellipseContour, CvType.CV_32FC2);
-				RotatedRect ellipse = Imgproc.fitEllipse(ellipseContour);
-				// convert the ellipse into a circle
-				double fittedRadius = (ellipse.size.width + ellipse.size.height) / 4;
-				if (fittedRadius > 2) {
-					circles.add(new Circle(ellipse.center, (int) (fittedRadius + 0.5)));
-				}
-			}
+	/**
+	 * In tracking mode the search after a successful frame is restricted to the best beacon's
+	 * bounding box grown by {@code trackingPadding} of its size on each side. The full frame is
+	 * searched again whenever the restricted search finds nothing and at least every
+	 * {@code fullSearchInterval} frames.
+	 */
+	public void setTrackingEnabled(boolean trackingEnabled) {
+		this.trackingEnabled = trackingEnabled;
+		resetTracking();
+	}
+
+	public boolean isTrackingEnabled() {
+		return trackingEnabled;
+	}
+
+	public void setTrackingPadding(double trackingPadding) {
+		this.trackingPadding = trackingPadding;
+	}
+
+	public void setFullSearchInterval(int fullSearchInterval) {
+		this.fullSearchInterval = fullSearchInterval;
+	}
+
+	public Rect getTrackingRoi() {
+		return trackingRoi;
+	}
+
+	public void resetTracking() {
+		trackingRoi = null;
+		framesSinceFullSearch = 0;
+	}
+
+	/**
+	 * Enables frame reuse: each frame is reduced to a {@link FrameSignature} and compared with
+	 * the last fully analyzed frame. When the change score (the largest block difference,
+	 * 0-255) is below {@code threshold}, the previous frame's beacons are returned again
+	 * instead of running the pipeline, for at most {@code maxStaleFrames} frames in a row.
+	 * Values around 8 suit a stationary robot; 0 disables reuse.
+	 */
+	public void setReuseThreshold(double threshold, int maxStaleFrames) {
+		this.reuseThreshold = threshold;
+		this.maxStaleFrames = maxStaleFrames;
+		invalidatePreviousFrame();
+	}
+
+	public double getReuseThreshold() {
+		return reuseThreshold;
+	}
+
+	// number of consecutive frames (including the last one) that were answered with reused results
+	public int getStaleFrames() {
+		return staleFrames;
+	}
+
+	// change score of the last frame, or 0 when reuse is disabled
+	public double getLastFrameChange() {
+		return lastFrameChange;
+	}
+
+	// forces the next frame to be fully analyzed, e.g. after changing a detector's range
+	public void invalidatePreviousFrame() {
+		signature.reset();
+		previousBeacons.clear();
+		staleFrames = 0;
+	}
+
+	/**
+	 * Sets the filter used to reject region pairs before building beacons. With a null filter
+	 * every pair of regions is scored.
+	 */
+	public void setPairFilter(BeaconPairFilter pairFilter) {
+		this.pairFilter = pairFilter;
+	}
+
+	public BeaconPairFilter getPairFilter() {
+		return pairFilter;
+	}
+
+	/**
+	 * Returns the stage timings and counters of this analyzer. They are disabled by default;
+	 * enable them with {@code getStats().setEnabled(true)}.
+	 */
+	public PipelineStats getStats() {
+		return stats;
+	}
 
-            contour.release();
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		if (tiles != null) {
+			setTiling(tiles);
 		}
+		setRegionScopedButtons(regionScopedButtons);
+	}
+
+	/**
+	 * Enables tiled mode for large working resolutions (see {@link #setResolution(int)}): each
+	 * color mask is thresholded and cleaned up in overlapping tiles processed in parallel on
+	 * the executor, and the contours of the stitched mask are then extracted at once so regions
+	 * crossing seams stay whole. A null grid disables tiling.
+	 */
+	public void setTiling(TileGrid tiles) {
+		this.tiles = tiles;
+		if (tiles != null) {
+			tiles.setScale((double) resolution / REFERENCE_RESOLUTION);
+		}
+		for (BeaconRegionFinder finder : regionFinders) {
+			finder.setTiling(tiles, executor);
+		}
+	}
+
+	public TileGrid getTiling() {
+		return tiles;
+	}
+
+	/**
+	 * Searches for buttons only inside each region's bounding rect, with the button parameters
+	 * scaled to the region instead of the frame, and spreads the regions over the executor.
+	 * See {@link BeaconRegionFinder#setRegionScopedButtons}.
+	 */
+	public void setRegionScopedButtons(boolean regionScopedButtons) {
+		this.regionScopedButtons = regionScopedButtons;
+		for (BeaconRegionFinder finder : regionFinders) {
+			finder.setRegionScopedButtons(regionScopedButtons, executor);
+		}
+	}
 
-        ellipseContour.release();
+	public boolean isRegionScopedButtons() {
+		return regionScopedButtons;
+	}
 
-		return circles;
+	// see ButtonDetector.setMinCircularity()
+	public void setMinButtonCircularity(double minCircularity) {
+		buttonDetector.setMinCircularity(minCircularity);
+		for (BeaconRegionFinder finder : regionFinders) {
+			finder.setMinButtonCircularity(minCircularity);
+		}
 	}
 
-	public static Map<String, Mat> getIntermediates() {
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public DebugIntermediates getAnalysisIntermediates() {
 		return intermediates;
 	}
 
+	private AnalysisIntermediates getActiveIntermediates() {
+		if (capture != null && capture.isCapturing()) {
+			return capture;
+		}
+		return isDebug() ? intermediates : null;
+	}
+
+	/**
+	 * Routes intermediates to a sampled, asynchronous capture instead of the synchronous
+	 * debug map. The capture takes precedence over {@link #setDebug(boolean)} on the frames it
+	 * samples. The caller remains responsible for starting and releasing the capture.
+	 */
+	public void setCapture(IntermediateCapture capture) {
+		this.capture = capture;
+	}
+
+	public IntermediateCapture getCapture() {
+		return capture;
+	}
+
+	/**
+	 * Logs every analyzed frame and its beacons (see {@link FrameRecorder}). The caller remains
+	 * responsible for starting and releasing the recorder.
+	 */
+	public void setRecorder(FrameRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public FrameRecorder getRecorder() {
+		return recorder;
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public boolean isDebug() {
+		return debug || DEBUG;
+	}
+
+	public void release() {
+		for (BeaconRegionFinder finder : regionFinders) {
+			finder.release();
+		}
+		buttonDetector.release();
+		frame.release();
+		NativeMemory.release(workingImage);
+		signature.release();
+		if (classifier != null) {
+			classifier.release();
+		}
+		for (Mat mat : intermediates.values()) {
+			NativeMemory.release(mat);
+		}
+		intermediates.clear();
+		previousBeacons.clear();
+	}
+
+	@Override
+	public void close() {
+		release();
+	}
+
 }
@@ -0,0 +1,128 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+
+import org.opencv.core.Rect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ground truth for one beacon in a recorded image. Label files have one beacon per line:
+ * <pre>
+ * # file colors x y width height
+ * beacon_01.jpg RB 120 80 200 150
+ * beacon_02.jpg BB 300 95 180 140
+ * empty_01.jpg none
+ * </pre>
+ * where {@code colors} lists the left and right half from the camera's point of view and the
+ * bounds are the axis-aligned beacon rect in original image pixels. A {@code none} line marks
+ * an image that contains no beacon.
+ */
+public class BeaconLabel {
+
+	private final String file;
+	private final BeaconColor leftColor, rightColor;
+	private final Rect bounds;
+
+	public BeaconLabel(String file, BeaconColor leftColor, BeaconColor rightColor, Rect bounds) {
+		this.file = file;
+		this.leftColor = leftColor;
+		this.rightColor = rightColor;
+		this.bounds = bounds;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public BeaconColor getLeftColor() {
+		return leftColor;
+	}
+
+	public BeaconColor getRightColor() {
+		return rightColor;
+	}
+
+	public Rect getBounds() {
+		return bounds;
+	}
+
+	// e.g. "RB"
+	public String getColors() {
+		return leftColor.toString() + rightColor.toString();
+	}
+
+	// colors of a detected beacon in label form (single-region beacons repeat their color)
+	public static String getColors(Beacon beacon) {
+		return beacon.getLeftRegion().getColor().toString() + beacon.getRightRegion().getColor().toString();
+	}
+
+	public static BeaconColor parseColor(char c) {
+		for (BeaconColor color : BeaconColor.values()) {
+			if (color.toString().charAt(0) == c) {
+				return color;
+			}
+		}
+		throw new IllegalArgumentException("unknown beacon color: " + c);
+	}
+
+	/**
+	 * Reads a label file into a map from image file name to its labels, in file order. Images
+	 * marked {@code none} map to an empty list.
+	 */
+	public static Map<String, List<BeaconLabel>> read(File labelFile) throws IOException {
+		Map<String, List<BeaconLabel>> labels = new LinkedHashMap<String, List<BeaconLabel>>();
+		BufferedReader reader = new BufferedReader(new FileReader(labelFile));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] parts = line.split("\\s+");
+				List<BeaconLabel> imageLabels = labels.get(parts[0]);
+				if (imageLabels == null) {
+					imageLabels = new ArrayList<BeaconLabel>();
+					labels.put(parts[0], imageLabels);
+				}
+				if (parts.length == 2 && parts[1].equals("none")) {
+					continue;
+				}
+				if (parts.length != 6 || parts[1].length() != 2) {
+					throw new IOException(labelFile + ":" + lineNumber + ": expected 'file colors x y width height' but got '" + line + "'");
+				}
+				try {
+					Rect bounds = new Rect(Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), Integer.parseInt(parts[5]));
+					imageLabels.add(new BeaconLabel(parts[0], parseColor(parts[1].charAt(0)), parseColor(parts[1].charAt(1)), bounds));
+				} catch (IllegalArgumentException e) {
+					throw new IOException(labelFile + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return labels;
+	}
+
+	// intersection over union of two rects
+	public static double overlap(Rect a, Rect b) {
+		int left = Math.max(a.x, b.x), top = Math.max(a.y, b.y);
+		int right = Math.min(a.x + a.width, b.x + b.width), bottom = Math.min(a.y + a.height, b.y + b.height);
+		if (right <= left || bottom <= top) {
+			return 0;
+		}
+		double intersection = (double) (right - left) * (bottom - top);
+		return intersection / (a.area() + b.area() - intersection);
+	}
+
+}
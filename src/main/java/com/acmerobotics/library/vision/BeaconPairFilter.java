@@ -0,0 +1,137 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.RotatedRect;
+
+/**
+ * Cheap checks used to reject candidate region pairs before a {@link Beacon} is built. By
+ * default only exact checks are made, so the analyzer finds the same beacons with or without
+ * the filter:
+ * <ul>
+ * <li>the best score the pair could reach given its button counts, and</li>
+ * <li>when that score needs the aspect ratio points, a center distance beyond which the
+ * combined bounds can't have a beacon's aspect ratio (see {@link #getMaxDistance}).</li>
+ * </ul>
+ * The heuristic checks, based on the two halves of a beacon being adjacent, roughly level and
+ * of similar contour area, are opt-in since they also reject some pairs the scorer accepts.
+ * Their distances are relative to the mean extent (longest side of the rotated bounds) of the
+ * two regions.
+ */
+public class BeaconPairFilter {
+
+	// longest side over shortest side of bounds that can still score the aspect ratio points
+	private static final double MAX_BEACON_RATIO = Math.max(Beacon.PARTIAL_BEACON_WH_RATIO, Beacon.FULL_BEACON_WH_RATIO)
+			+ Math.sqrt(Beacon.MAX_RATIO_ERROR);
+	private static final double MIN_AREA_PER_DIAGONAL = MAX_BEACON_RATIO / (1 + MAX_BEACON_RATIO * MAX_BEACON_RATIO);
+
+	private int minScore;
+	private double maxCenterDistance;
+	private double maxVerticalOffset;
+	private double minAreaRatio;
+
+	public BeaconPairFilter() {
+		this(BeaconAnalyzer.MIN_BEACON_SCORE, 0, 0, 0);
+	}
+
+	// 0 disables the corresponding heuristic check
+	public BeaconPairFilter(int minScore, double maxCenterDistance, double maxVerticalOffset, double minAreaRatio) {
+		this.minScore = minScore;
+		this.maxCenterDistance = maxCenterDistance;
+		this.maxVerticalOffset = maxVerticalOffset;
+		this.minAreaRatio = minAreaRatio;
+	}
+
+	public static double getExtent(BeaconRegion region) {
+		RotatedRect bounds = region.getBounds();
+		return Math.max(bounds.size.width, bounds.size.height);
+	}
+
+	// every corner of the region's rotated bounds is within this distance of its center
+	public static double getRadius(BeaconRegion region) {
+		RotatedRect bounds = region.getBounds();
+		return Math.hypot(bounds.size.width, bounds.size.height) / 2;
+	}
+
+	/**
+	 * Largest center distance at which two regions with the given bounds radii (see
+	 * {@link #getRadius}) can score the aspect ratio points. The combined bounds contain both
+	 * centers, so their diagonal is at least the distance d, and with sides of ratio at most
+	 * r their area is at least d^2 r / (1 + r^2). The rect along the line between the centers
+	 * holds all eight corners and has an area of at most (d + radius1 + radius2) 2 maxRadius,
+	 * and the bounds are the smallest rect, so d can't exceed the root of the difference.
+	 */
+	public static double getMaxDistance(double radius1, double radius2) {
+		double maxRadius = Math.max(radius1, radius2);
+		double k = MIN_AREA_PER_DIAGONAL;
+		double distance = (maxRadius + Math.sqrt(maxRadius * maxRadius + 2 * k * maxRadius * (radius1 + radius2))) / k;
+		// leave room for the float corners that the bounds are fitted to
+		return 1.001 * distance + 1;
+	}
+
+	// whether every pair with this region needs the aspect ratio points to reach the minimum score
+	public boolean isDistanceBounded(BeaconRegion region) {
+		if (maxCenterDistance > 0) {
+			return true;
+		}
+		return Beacon.getMaxScore(region.getButtons().size(), 1) - Beacon.RATIO_SCORE < minScore;
+	}
+
+	// upper bound of the center distance of the pairs accepted for this region
+	public double getMaxReach(BeaconRegion region, double maxRadius, double maxExtent) {
+		double reach = getMaxDistance(getRadius(region), maxRadius);
+		if (maxCenterDistance > 0) {
+			reach = Math.min(reach, maxCenterDistance * (getExtent(region) + maxExtent) / 2);
+		}
+		return reach;
+	}
+
+	public boolean accept(BeaconRegion region) {
+		return Beacon.getMaxScore(region.getButtons().size(), -1) >= minScore;
+	}
+
+	public boolean accept(BeaconRegion region1, BeaconRegion region2) {
+		int maxScore = Beacon.getMaxScore(region1.getButtons().size(), region2.getButtons().size());
+		if (maxScore < minScore) {
+			return false;
+		}
+
+		RotatedRect bounds1 = region1.getBounds();
+		RotatedRect bounds2 = region2.getBounds();
+		double dx = bounds1.center.x - bounds2.center.x;
+		double dy = bounds1.center.y - bounds2.center.y;
+		double distanceSquared = dx * dx + dy * dy;
+
+		if (maxScore - Beacon.RATIO_SCORE < minScore) {
+			double maxDistance = getMaxDistance(getRadius(region1), getRadius(region2));
+			if (distanceSquared > maxDistance * maxDistance) {
+				return false;
+			}
+		}
+
+		if (maxCenterDistance == 0 && maxVerticalOffset == 0 && minAreaRatio == 0) {
+			return true;
+		}
+
+		double extent1 = Math.max(bounds1.size.width, bounds1.size.height);
+		double extent2 = Math.max(bounds2.size.width, bounds2.size.height);
+		double meanExtent = (extent1 + extent2) / 2;
+
+		if (maxCenterDistance > 0) {
+			double maxDistance = maxCenterDistance * meanExtent;
+			if (distanceSquared > maxDistance * maxDistance) {
+				return false;
+			}
+		}
+
+		if (maxVerticalOffset > 0 && Math.abs(dy) > maxVerticalOffset * meanExtent) {
+			return false;
+		}
+
+		if (minAreaRatio > 0) {
+			double area1 = region1.area();
+			double area2 = region2.area();
+			return Math.min(area1, area2) >= minAreaRatio * Math.max(area1, area2);
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,279 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Runs a {@link BeaconAnalyzer} on its own thread, decoupled from the thread that produces
+ * frames. Frames are copied into a small pool of Mats and handed off through a bounded queue.
+ * With {@link DropPolicy#LATEST_WINS} a full queue discards its oldest frame, so the analyzer
+ * always works on the newest one; with {@link DropPolicy#BLOCK} the producer waits instead.
+ */
+public class BeaconPipeline {
+
+	public enum DropPolicy {
+		LATEST_WINS,
+		BLOCK
+	}
+
+	public interface ResultListener {
+		void onResult(Result result);
+	}
+
+	public static class Result {
+		public final List<DetectedBeacon> beacons;
+		public final long frameNumber;
+		public final long frameTimestamp;
+		// time from submit() to the end of analysis, and of the analysis alone
+		public final long latencyNanos;
+		public final long analysisNanos;
+		public final long droppedFrames;
+		// consecutive frames the beacons have been reused for (see BeaconAnalyzer.setReuseThreshold)
+		public final int staleFrames;
+
+		public Result(List<DetectedBeacon> beacons, long frameNumber, long frameTimestamp, long latencyNanos, long analysisNanos, long droppedFrames, int staleFrames) {
+			this.beacons = beacons;
+			this.frameNumber = frameNumber;
+			this.frameTimestamp = frameTimestamp;
+			this.latencyNanos = latencyNanos;
+			this.analysisNanos = analysisNanos;
+			this.droppedFrames = droppedFrames;
+			this.staleFrames = staleFrames;
+		}
+	}
+
+	private static class FrameSlot {
+		private final Mat image = NativeMemory.newMat("BeaconPipeline");
+		private long frameNumber, timestamp, submitNanos;
+	}
+
+	private final BeaconAnalyzer analyzer;
+	private final ButtonDetectionMethod buttonMethod;
+	private final ResultListener listener;
+	private final DropPolicy dropPolicy;
+	private final int capacity;
+
+	private final Object lock = new Object();
+	private final Deque<FrameSlot> queue, free;
+	private long submittedFrames, droppedFrames, failedFrames;
+	private RuntimeException lastError;
+	private boolean running;
+
+	private FrameSource source;
+	private Thread worker;
+
+	public BeaconPipeline(BeaconAnalyzer analyzer, ResultListener listener) {
+		this(analyzer, ButtonDetectionMethod.BUTTON_ELLIPSE, listener, 1, DropPolicy.LATEST_WINS);
+	}
+
+	public BeaconPipeline(BeaconAnalyzer analyzer, ButtonDetectionMethod buttonMethod, ResultListener listener, int capacity, DropPolicy dropPolicy) {
+		this.analyzer = analyzer;
+		this.buttonMethod = buttonMethod;
+		this.listener = listener;
+		this.capacity = capacity;
+		this.dropPolicy = dropPolicy;
+
+		// the queued frames, one being filled and one being analyzed
+		this.queue = new ArrayDeque<FrameSlot>(capacity);
+		this.free = new ArrayDeque<FrameSlot>(capacity + 2);
+		for (int i = 0; i < capacity + 2; i++) {
+			free.add(new FrameSlot());
+		}
+
+		// the frame copies are owned by the pipeline, so keep them at full size between frames
+		analyzer.setPreserveInput(true);
+	}
+
+	public void setFrameSource(FrameSource source) {
+		this.source = source;
+	}
+
+	public void start() {
+		synchronized (lock) {
+			if (running) {
+				return;
+			}
+			running = true;
+		}
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processFrames();
+			}
+		}, "BeaconPipeline");
+		worker.start();
+		if (source != null) {
+			source.start(this);
+		}
+	}
+
+	public void stop() {
+		if (source != null) {
+			source.stop();
+		}
+		synchronized (lock) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			lock.notifyAll();
+		}
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		worker = null;
+	}
+
+	/**
+	 * Hands a frame to the pipeline. Returns false if the pipeline isn't running or the frame
+	 * was dropped. Only blocks with {@link DropPolicy#BLOCK}.
+	 */
+	public boolean submit(Mat frame, long timestamp) throws InterruptedException {
+		FrameSlot slot;
+		synchronized (lock) {
+			if (dropPolicy == DropPolicy.BLOCK) {
+				while (running && free.isEmpty()) {
+					lock.wait();
+				}
+			}
+			if (!running) {
+				return false;
+			}
+			slot = free.pollFirst();
+			if (slot == null) {
+				slot = queue.pollFirst();
+				if (slot == null) {
+					droppedFrames++;
+					return false;
+				}
+				droppedFrames++;
+			}
+			slot.frameNumber = submittedFrames++;
+		}
+
+		frame.copyTo(slot.image);
+		slot.timestamp = timestamp;
+		slot.submitNanos = System.nanoTime();
+
+		synchronized (lock) {
+			if (dropPolicy == DropPolicy.BLOCK) {
+				while (running && queue.size() >= capacity) {
+					lock.wait();
+				}
+			} else {
+				while (queue.size() >= capacity) {
+					free.addLast(queue.pollFirst());
+					droppedFrames++;
+				}
+			}
+			if (!running) {
+				free.addLast(slot);
+				return false;
+			}
+			queue.addLast(slot);
+			lock.notifyAll();
+		}
+		return true;
+	}
+
+	private void processFrames() {
+		while (true) {
+			FrameSlot slot;
+			long dropped;
+			synchronized (lock) {
+				while (running && queue.isEmpty()) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						running = false;
+					}
+				}
+				if (!running) {
+					return;
+				}
+				slot = queue.pollFirst();
+				dropped = droppedFrames;
+				lock.notifyAll();
+			}
+
+			Result result = null;
+			try {
+				List<DetectedBeacon> beacons = new ArrayList<DetectedBeacon>();
+				long start = System.nanoTime();
+				analyzer.detect(slot.image, buttonMethod, beacons);
+				long end = System.nanoTime();
+				result = new Result(beacons, slot.frameNumber, slot.timestamp, end - slot.submitNanos, end - start, dropped, analyzer.getStaleFrames());
+			} catch (RuntimeException e) {
+				recordFailure(e);
+			}
+
+			synchronized (lock) {
+				free.addLast(slot);
+				lock.notifyAll();
+			}
+
+			// a listener that throws counts as a failed frame instead of killing the worker
+			if (result != null) {
+				try {
+					listener.onResult(result);
+				} catch (RuntimeException e) {
+					recordFailure(e);
+				}
+			}
+		}
+	}
+
+	private void recordFailure(RuntimeException e) {
+		synchronized (lock) {
+			failedFrames++;
+			lastError = e;
+		}
+	}
+
+	public long getSubmittedFrames() {
+		synchronized (lock) {
+			return submittedFrames;
+		}
+	}
+
+	public long getDroppedFrames() {
+		synchronized (lock) {
+			return droppedFrames;
+		}
+	}
+
+	public long getFailedFrames() {
+		synchronized (lock) {
+			return failedFrames;
+		}
+	}
+
+	public RuntimeException getLastError() {
+		synchronized (lock) {
+			return lastError;
+		}
+	}
+
+	public void release() {
+		stop();
+		synchronized (lock) {
+			for (FrameSlot slot : queue) {
+				NativeMemory.release(slot.image);
+			}
+			for (FrameSlot slot : free) {
+				NativeMemory.release(slot.image);
+			}
+			queue.clear();
+			free.clear();
+		}
+	}
+
+}
@@ -4,29 +4,105 @@ import com.acmerobotics.library.vision.Beacon.BeaconColor;
 
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class BeaconRegion {
+public class BeaconRegion implements AutoCloseable {
 	
 	private ColorRegion region;
 	private BeaconColor color;
 	private List<Circle> buttons;
 	private RotatedRect bounds;
+	private Moments moments;
+
+	// geometry is computed once here since it's read for every candidate pair
+	private double area, centroidX, centroidY;
+	private int rectX, rectY, rectWidth, rectHeight;
 	
 	public BeaconRegion(ColorRegion colorRegion, BeaconColor color) {
 		this.region = colorRegion;
 		this.color = color;
 		this.buttons = new ArrayList<Circle>();
         this.bounds = Util.fitRotatedRect(this.region.getContour());
+
+		this.moments = Imgproc.moments(this.region.getContour());
+		this.area = moments.m00;
+		if (area > 0) {
+			this.centroidX = moments.m10 / area;
+			this.centroidY = moments.m01 / area;
+		} else {
+			this.centroidX = bounds.center.x;
+			this.centroidY = bounds.center.y;
+		}
+
+		Rect rect = bounds.boundingRect();
+		this.rectX = rect.x;
+		this.rectY = rect.y;
+		this.rectWidth = rect.width;
+		this.rectHeight = rect.height;
 	}
 	
+	// a region with known geometry and no contour, e.g. to test the geometry-only code
+	BeaconRegion(BeaconColor color, RotatedRect bounds, double area, double centroidX, double centroidY) {
+		this.color = color;
+		this.buttons = new ArrayList<Circle>();
+		this.bounds = bounds;
+		this.area = area;
+		this.centroidX = centroidX;
+		this.centroidY = centroidY;
+
+		Rect rect = bounds.boundingRect();
+		this.rectX = rect.x;
+		this.rectY = rect.y;
+		this.rectWidth = rect.width;
+		this.rectHeight = rect.height;
+	}
+
 	public double area() {
-		return Imgproc.contourArea(region.getContour());
+		return area;
+	}
+
+	public Moments getMoments() {
+		return moments;
+	}
+
+	public double getCentroidX() {
+		return centroidX;
+	}
+
+	public double getCentroidY() {
+		return centroidY;
+	}
+
+	public int getRectX() {
+		return rectX;
+	}
+
+	public int getRectY() {
+		return rectY;
+	}
+
+	public int getRectWidth() {
+		return rectWidth;
+	}
+
+	public int getRectHeight() {
+		return rectHeight;
+	}
+
+	public Rect getBoundingRect() {
+		return new Rect(rectX, rectY, rectWidth, rectHeight);
+	}
+
+	// same semantics as getBounds().boundingRect().contains() without building the rect
+	public boolean boundingRectContains(double x, double y) {
+		return rectX <= x && x < rectX + rectWidth && rectY <= y && y < rectY + rectHeight;
 	}
 	
 	public void addButton(Circle button) {
@@ -65,7 +141,14 @@ public class BeaconRegion {
 	}
 
 	public void release() {
-		region.release();
+		if (region != null) {
+			region.release();
+		}
+	}
+
+	@Override
+	public void close() {
+		release();
 	}
 
 }
@@ -0,0 +1,279 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+import com.acmerobotics.library.vision.BeaconAnalyzer.AnalysisIntermediates;
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the color detection, Otsu threshold and button search for a single beacon color.
+ * Every finder owns its own buffers so the finders of one analyzer can run in parallel.
+ */
+public class BeaconRegionFinder {
+
+	// button search state for one thread in region-scoped mode
+	private static class ButtonWorker {
+		private final ButtonDetector detector = new ButtonDetector();
+		private final CircleBuffer buttons = new CircleBuffer();
+		private final Mat roi = NativeMemory.newMat("BeaconRegionFinder.roi");
+
+		private void release() {
+			detector.release();
+			NativeMemory.release(roi);
+		}
+	}
+
+	private ColorDetector detector;
+	private BeaconColor color;
+	private ButtonDetector buttonDetector;
+	private List<BeaconRegion> regions;
+	private CircleBuffer buttons;
+	private RegionGrid regionGrid;
+	private PipelineStats stats;
+	private StagePipeline regionPipeline;
+	private StageContext stageContext;
+	private TileGrid tiles;
+	private ExecutorService executor;
+	private boolean regionScopedButtons;
+	private double minButtonCircularity;
+	private List<ButtonWorker> buttonWorkers;
+	private double scale;
+	private Mat gray;
+
+	public BeaconRegionFinder(ColorDetector detector, BeaconColor color) {
+		this.detector = detector;
+		this.color = color;
+		this.buttonDetector = new ButtonDetector();
+		this.regions = new ArrayList<BeaconRegion>();
+		this.buttons = new CircleBuffer();
+		this.regionGrid = new RegionGrid();
+		this.stats = new PipelineStats();
+		this.regionPipeline = StagePipeline.createButtonInputPipeline();
+		this.stageContext = new StageContext();
+		this.buttonWorkers = new ArrayList<ButtonWorker>();
+		this.scale = 1;
+		this.gray = NativeMemory.newMat("BeaconRegionFinder");
+	}
+
+	public ColorDetector getDetector() {
+		return detector;
+	}
+
+	public BeaconColor getColor() {
+		return color;
+	}
+
+	public void setScale(double scale) {
+		this.scale = scale;
+		detector.setScale(scale);
+		buttonDetector.setScale(scale);
+		regionPipeline.setScale(scale);
+	}
+
+	public void setStats(PipelineStats stats) {
+		this.stats = stats;
+		detector.setStats(stats);
+		regionPipeline.setStats(stats);
+	}
+
+	/**
+	 * Replaces the stages that turn the frame and color mask into the button search input
+	 * (by default {@link StagePipeline#createButtonInputPipeline()}). The previous pipeline is
+	 * released.
+	 */
+	public void setRegionPipeline(StagePipeline regionPipeline) {
+		this.regionPipeline.release();
+		this.regionPipeline = regionPipeline;
+		regionPipeline.setScale(scale);
+		regionPipeline.setStats(stats);
+	}
+
+	public StagePipeline getRegionPipeline() {
+		return regionPipeline;
+	}
+
+	// with a grid, the color mask is built tile by tile on the executor (see ColorDetector)
+	public void setTiling(TileGrid tiles, ExecutorService executor) {
+		this.tiles = tiles;
+		this.executor = executor;
+	}
+
+	/**
+	 * In region-scoped mode the button search runs on each region's bounding rect instead of
+	 * the whole frame, with the detector's parameters scaled to the region's size (see
+	 * {@link ButtonDetector#REFERENCE_REGION_SIZE}) rather than the frame's. The regions are
+	 * split between up to one task per core on {@code executor}, or searched in turn when it
+	 * is null.
+	 */
+	public void setRegionScopedButtons(boolean enabled, ExecutorService executor) {
+		this.regionScopedButtons = enabled;
+		this.executor = executor;
+	}
+
+	public boolean isRegionScopedButtons() {
+		return regionScopedButtons;
+	}
+
+	// see ButtonDetector.setMinCircularity()
+	public void setMinButtonCircularity(double minCircularity) {
+		this.minButtonCircularity = minCircularity;
+		buttonDetector.setMinCircularity(minCircularity);
+		for (ButtonWorker worker : buttonWorkers) {
+			worker.detector.setMinCircularity(minCircularity);
+		}
+	}
+
+	public List<BeaconRegion> getRegions() {
+		return regions;
+	}
+
+	public List<BeaconRegion> findRegions(FrameContext frame, ButtonDetectionMethod method, AnalysisIntermediates intermediates) {
+		findRegions(frame, method, intermediates, regions);
+		return regions;
+	}
+
+	public void findRegions(FrameContext frame, ButtonDetectionMethod method, AnalysisIntermediates intermediates, List<BeaconRegion> beaconRegions) {
+		if (tiles == null) {
+			detector.analyzeImage(frame, intermediates, color.toString());
+		} else {
+			detector.analyzeImage(frame, intermediates, color.toString(), tiles, executor);
+		}
+		List<ColorRegion> colorRegions = detector.getRegions();
+
+		if (intermediates != null && intermediates.captures("beacon_regions")) {
+			Mat temp = NativeMemory.newMat("BeaconRegionFinder");
+			frame.getImage().copyTo(temp);
+			ColorRegion.drawRegions(temp, colorRegions, color == BeaconColor.RED ? new Scalar(0, 0, 255) : new Scalar(255, 0, 0), 2);
+			intermediates.put("beacon_regions_" + color, temp);
+			NativeMemory.release(temp);
+		}
+
+		frame.getGray();
+		stageContext.set(frame, detector.getColorRange(), detector.getClassLabel(), detector.getMask());
+		regionPipeline.apply(stageContext, gray, intermediates, color.toString());
+
+		beaconRegions.clear();
+
+		for (ColorRegion region : colorRegions) {
+			beaconRegions.add(new BeaconRegion(region, color));
+		}
+
+		if (regionScopedButtons) {
+			long buttonStart = stats.start();
+			findButtonsInRegions(frame, method, beaconRegions);
+			stats.record(PipelineStats.Stage.BUTTON_SEARCH, buttonStart);
+			return;
+		}
+
+		buttonDetector.setIntermediates(intermediates, color.toString());
+		long buttonStart = stats.start();
+		buttonDetector.findButtons(gray, method, buttons);
+		if (frame.getOffsetX() != 0 || frame.getOffsetY() != 0) {
+			buttons.offset(frame.getOffsetX(), frame.getOffsetY());
+		}
+
+		regionGrid.build(beaconRegions);
+		regionGrid.assignButtons(buttons);
+		stats.record(PipelineStats.Stage.BUTTON_SEARCH, buttonStart);
+	}
+
+	private void findButtonsInRegions(final FrameContext frame, final ButtonDetectionMethod method, final List<BeaconRegion> beaconRegions) {
+		int numWorkers = executor == null ? 1 : Math.min(beaconRegions.size(), Runtime.getRuntime().availableProcessors());
+		while (buttonWorkers.size() < numWorkers) {
+			ButtonWorker worker = new ButtonWorker();
+			worker.detector.setMinCircularity(minButtonCircularity);
+			buttonWorkers.add(worker);
+		}
+
+		if (numWorkers <= 1) {
+			for (int i = 0; i < beaconRegions.size(); i++) {
+				findButtonsInRegion(frame, method, beaconRegions.get(i), buttonWorkers.get(0));
+			}
+			return;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int w = 0; w < numWorkers; w++) {
+			final int first = w, stride = numWorkers;
+			final ButtonWorker worker = buttonWorkers.get(w);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = first; i < beaconRegions.size(); i += stride) {
+						findButtonsInRegion(frame, method, beaconRegions.get(i), worker);
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> result : executor.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while searching regions for buttons", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("region button search failed", e.getCause());
+		}
+	}
+
+	private void findButtonsInRegion(FrameContext frame, ButtonDetectionMethod method, BeaconRegion region, ButtonWorker worker) {
+		// the region is in frame coordinates, the thresholded gray image in local ones
+		int left = Math.max(0, region.getRectX() - frame.getOffsetX());
+		int top = Math.max(0, region.getRectY() - frame.getOffsetY());
+		int right = Math.min(gray.cols(), region.getRectX() + region.getRectWidth() - frame.getOffsetX());
+		int bottom = Math.min(gray.rows(), region.getRectY() + region.getRectHeight() - frame.getOffsetY());
+		if (right <= left || bottom <= top) {
+			return;
+		}
+
+		// the ellipse search modifies its input, and the rects of neighboring regions may overlap
+		Mat roi = gray.submat(top, bottom, left, right);
+		roi.copyTo(worker.roi);
+		NativeMemory.release(roi);
+
+		worker.detector.setScale(Math.max(region.getRectWidth(), region.getRectHeight()) / (double) ButtonDetector.REFERENCE_REGION_SIZE);
+		worker.detector.findButtons(worker.roi, method, worker.buttons);
+		worker.buttons.offset(left + frame.getOffsetX(), top + frame.getOffsetY());
+		for (int i = 0; i < worker.buttons.size(); i++) {
+			if (region.boundingRectContains(worker.buttons.getX(i), worker.buttons.getY(i))) {
+				region.addButton(worker.buttons.toCircle(i));
+			}
+		}
+	}
+
+	public Callable<List<BeaconRegion>> newTask(final FrameContext frame, final ButtonDetectionMethod method, final AnalysisIntermediates intermediates) {
+		return new Callable<List<BeaconRegion>>() {
+			@Override
+			public List<BeaconRegion> call() {
+				return findRegions(frame, method, intermediates);
+			}
+		};
+	}
+
+	public void releaseBuffers() {
+		buttonDetector.release();
+		for (ButtonWorker worker : buttonWorkers) {
+			worker.release();
+		}
+		buttonWorkers.clear();
+		regionPipeline.release();
+		NativeMemory.release(gray);
+	}
+
+	public void release() {
+		detector.release();
+		releaseBuffers();
+	}
+
+}
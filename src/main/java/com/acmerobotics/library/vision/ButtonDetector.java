@@ -0,0 +1,235 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.AnalysisIntermediates;
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ButtonDetector {
+
+	// approximate size (longest side) of a beacon half whose buttons the 640 px parameters
+	// fit: the largest Hough radius of 30 px is ~0.19 of the half's width, like the real buttons
+	public static final int REFERENCE_REGION_SIZE = 160;
+
+	private Mat blurred, circles, edges, hierarchy;
+	private Mat smallKernel, mediumKernel, largeKernel;
+	private KernelCache kernelCache;
+
+	// size-dependent parameters, tuned at 640 px and scaled by setScale()
+	private Size houghBlurSize, ellipseBlurSize;
+	private double blurSigma, houghMinDist, minRadius;
+	private int houghMaxRadius, largeNonZero, mediumNonZero;
+	private MatOfPoint2f ellipseContour;
+	private List<MatOfPoint> contours;
+	private ContourBatch contourBatch;
+	private int[] contourBounds;
+	private double minCircularity;
+	private CircleBuffer listBuffer;
+	private AnalysisIntermediates intermediates;
+	private String debugTag;
+
+	public ButtonDetector() {
+		this.blurred = NativeMemory.newMat("ButtonDetector");
+		this.circles = NativeMemory.newMat("ButtonDetector");
+		this.edges = NativeMemory.newMat("ButtonDetector");
+		this.hierarchy = NativeMemory.newMat("ButtonDetector");
+		this.kernelCache = new KernelCache();
+		this.houghBlurSize = new Size();
+		this.ellipseBlurSize = new Size();
+		this.ellipseContour = NativeMemory.track(new MatOfPoint2f(), "ButtonDetector");
+		this.contours = new ArrayList<MatOfPoint>();
+		this.contourBatch = new ContourBatch();
+		this.contourBounds = new int[4];
+		this.listBuffer = new CircleBuffer();
+		this.debugTag = "";
+		setScale(1);
+	}
+
+	public void setScale(double scale) {
+		int houghBlur = KernelCache.scaleOddSize(9, scale);
+		houghBlurSize.width = houghBlur;
+		houghBlurSize.height = houghBlur;
+		int ellipseBlur = KernelCache.scaleOddSize(5, scale);
+		ellipseBlurSize.width = ellipseBlur;
+		ellipseBlurSize.height = ellipseBlur;
+		blurSigma = 2 * scale;
+
+		houghMinDist = 15 * scale;
+		houghMaxRadius = (int) Math.round(30 * scale);
+
+		// pixel counts scale with area
+		largeNonZero = (int) Math.round(1700 * scale * scale);
+		mediumNonZero = (int) Math.round(500 * scale * scale);
+		smallKernel = kernelCache.get(KernelCache.scaleOddSize(3, scale));
+		mediumKernel = kernelCache.get(KernelCache.scaleOddSize(5, scale));
+		largeKernel = kernelCache.get(KernelCache.scaleOddSize(7, scale));
+		minRadius = 2 * scale;
+	}
+
+	/**
+	 * Contours whose circularity (4 pi area / perimeter^2) is below this are dropped before the
+	 * ellipse fit. Closed button outlines are usually above 0.5, but broken edges are traced as
+	 * thin, nearly zero-area contours, so the default of 0 keeps them as before.
+	 */
+	public void setMinCircularity(double minCircularity) {
+		this.minCircularity = minCircularity;
+	}
+
+	public void setIntermediates(AnalysisIntermediates intermediates, String debugTag) {
+		this.intermediates = intermediates;
+		this.debugTag = debugTag;
+	}
+
+	public List<Circle> findButtons(Mat gray, ButtonDetectionMethod method) {
+		List<Circle> circleList = new ArrayList<Circle>();
+		findButtons(gray, method, circleList);
+		return circleList;
+	}
+
+	public void findButtons(Mat gray, ButtonDetectionMethod method, List<Circle> circleList) {
+		findButtons(gray, method, listBuffer);
+		listBuffer.toCircles(circleList);
+	}
+
+	public void findButtons(Mat gray, ButtonDetectionMethod method, CircleBuffer circleList) {
+		if (method == ButtonDetectionMethod.BUTTON_HOUGH) {
+			findButtonsHough(gray, circleList);
+		} else if (method == ButtonDetectionMethod.BUTTON_ELLIPSE) {
+			findButtonsEllipse(gray, circleList);
+		} else {
+			throw new RuntimeException("unknown button detection method: " + method.toString());
+		}
+	}
+
+	public List<Circle> findButtonsHough(Mat gray) {
+		List<Circle> circleList = new ArrayList<Circle>();
+		findButtonsHough(gray, circleList);
+		return circleList;
+	}
+
+	public void findButtonsHough(Mat gray, List<Circle> circleList) {
+		findButtonsHough(gray, listBuffer);
+		listBuffer.toCircles(circleList);
+	}
+
+	public void findButtonsHough(Mat gray, CircleBuffer circleList) {
+		Imgproc.GaussianBlur(gray, blurred, houghBlurSize, blurSigma);
+
+		Imgproc.HoughCircles(blurred, circles, Imgproc.CV_HOUGH_GRADIENT, 1, houghMinDist, 200, 20, 0, houghMaxRadius);
+
+		circleList.readHoughCircles(circles);
+	}
+
+	public List<Circle> findButtonsEllipse(Mat gray) {
+		List<Circle> circleList = new ArrayList<Circle>();
+		findButtonsEllipse(gray, circleList);
+		return circleList;
+	}
+
+	public void findButtonsEllipse(Mat gray, List<Circle> circleList) {
+		findButtonsEllipse(gray, listBuffer);
+		listBuffer.toCircles(circleList);
+	}
+
+	public void findButtonsEllipse(Mat gray, CircleBuffer circles) {
+		circles.clear();
+
+		int nonZero = Core.countNonZero(gray);
+
+		if (intermediates != null && intermediates.captures("buttons")) {
+			Mat temp = NativeMemory.newMat("ButtonDetector");
+			gray.copyTo(temp);
+			Imgproc.putText(temp, Integer.toString(nonZero), new Point(0, 30), Core.FONT_HERSHEY_SIMPLEX, 1, new Scalar(255), 2);
+			intermediates.put("buttons_" + debugTag, temp);
+			NativeMemory.release(temp);
+		}
+//		 don't morphologically open unless there are enough white pixels
+		Mat kernel;
+		if (nonZero > largeNonZero) {
+			kernel = largeKernel;
+		} else if (nonZero > mediumNonZero) {
+			kernel = mediumKernel;
+		}else {
+			kernel = smallKernel;
+		}
+		Imgproc.morphologyEx(gray, gray, Imgproc.MORPH_OPEN, kernel);
+		if (intermediates != null && intermediates.captures("button_smooth")) intermediates.put("button_smooth_" + debugTag, gray);
+		Imgproc.GaussianBlur(gray, gray, ellipseBlurSize, blurSigma);
+		Imgproc.Canny(gray, edges, 200, 100);
+
+		if (intermediates != null && intermediates.captures("button_edges")) intermediates.put("button_edges_" + debugTag, edges);
+
+		contours.clear();
+		Imgproc.findContours(edges, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+		// pull every contour into Java at once, then only fit ellipses to the plausible ones
+		contourBatch.read(contours);
+		for (MatOfPoint contour : contours) {
+			contour.release();
+		}
+		contours.clear();
+
+		for (int i = 0; i < contourBatch.size(); i++) {
+			// at least 5 points are needed to fit an ellipse
+			if (contourBatch.getLength(i) < 5) {
+				continue;
+			}
+
+			contourBatch.getBounds(i, contourBounds);
+			int width = contourBounds[2] - contourBounds[0], height = contourBounds[3] - contourBounds[1];
+			double eccentricity = ((double) width) / height;
+			if (Math.abs(eccentricity - 1) > 0.3) {
+				continue;
+			}
+
+			if (!isLargeEnough(width, height, contourBatch.getPerimeter(i), minRadius)) {
+				continue;
+			}
+
+			if (minCircularity > 0 && contourBatch.getCircularity(i) < minCircularity) {
+				continue;
+			}
+
+			contourBatch.toMatOfPoint2f(i, ellipseContour);
+			RotatedRect ellipse = Imgproc.fitEllipse(ellipseContour);
+			// convert the ellipse into a circle
+			double fittedRadius = (ellipse.size.width + ellipse.size.height) / 4;
+			if (fittedRadius > minRadius) {
+				circles.add(ellipse.center.x, ellipse.center.y, (int) (fittedRadius + 0.5));
+			}
+		}
+	}
+
+	/**
+	 * Heuristic size prefilter run before fitting an ellipse. A round outline with radius r spans
+	 * about 2r and has a perimeter of about 2 pi r, so an outline that passes the fit's
+	 * minRadius check clears both thresholds here by a factor of two. This is not a bound on
+	 * fitEllipse, which can fit an ellipse much larger than the contour's bounds to a short
+	 * arc, so such rare buttons are rejected here.
+	 */
+	static boolean isLargeEnough(int width, int height, double perimeter, double minRadius) {
+		return Math.max(width, height) >= minRadius && perimeter >= Math.PI * minRadius;
+	}
+
+	public void release() {
+		NativeMemory.release(blurred);
+		NativeMemory.release(circles);
+		NativeMemory.release(edges);
+		NativeMemory.release(hierarchy);
+		NativeMemory.release(ellipseContour);
+		contourBatch.release();
+		kernelCache.release();
+	}
+
+}
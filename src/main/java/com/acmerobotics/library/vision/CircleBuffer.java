@@ -0,0 +1,114 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+import java.util.List;
+
+/**
+ * Growable struct-of-arrays table of circles. Detection results are written here as
+ * primitives and only turned into {@link Circle} objects once they are actually kept.
+ */
+public class CircleBuffer {
+
+	private double[] x, y;
+	private int[] radius;
+	private float[] matData;
+	private int size;
+
+	public CircleBuffer() {
+		this(16);
+	}
+
+	public CircleBuffer(int capacity) {
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.radius = new int[capacity];
+		this.matData = new float[0];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public double getX(int i) {
+		return x[i];
+	}
+
+	public double getY(int i) {
+		return y[i];
+	}
+
+	public int getRadius(int i) {
+		return radius[i];
+	}
+
+	public void add(double cx, double cy, int r) {
+		if (size == x.length) {
+			ensureCapacity(2 * size + 1);
+		}
+		x[size] = cx;
+		y[size] = cy;
+		radius[size] = r;
+		size++;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > x.length) {
+			double[] newX = new double[capacity], newY = new double[capacity];
+			int[] newRadius = new int[capacity];
+			System.arraycopy(x, 0, newX, 0, size);
+			System.arraycopy(y, 0, newY, 0, size);
+			System.arraycopy(radius, 0, newRadius, 0, size);
+			x = newX;
+			y = newY;
+			radius = newRadius;
+		}
+	}
+
+	/**
+	 * Replaces the contents with the output of {@code Imgproc.HoughCircles} (a 1xN CV_32FC3
+	 * Mat), read with a single bulk transfer and rounded like {@link Circle#fromDoubleArray}.
+	 */
+	public void readHoughCircles(Mat circles) {
+		clear();
+		int numCircles = circles.empty() ? 0 : circles.cols();
+		if (numCircles == 0) {
+			return;
+		}
+		if (matData.length < 3 * numCircles) {
+			matData = new float[3 * numCircles];
+		}
+		circles.get(0, 0, matData);
+		ensureCapacity(numCircles);
+		for (int i = 0, j = 0; i < numCircles; i++, j += 3) {
+			x[i] = Math.round(matData[j]);
+			y[i] = Math.round(matData[j + 1]);
+			radius[i] = Math.round(matData[j + 2]);
+		}
+		size = numCircles;
+	}
+
+	public void offset(double dx, double dy) {
+		for (int i = 0; i < size; i++) {
+			x[i] += dx;
+			y[i] += dy;
+		}
+	}
+
+	public Circle toCircle(int i) {
+		return new Circle(new Point(x[i], y[i]), radius[i]);
+	}
+
+	public void toCircles(List<Circle> circles) {
+		circles.clear();
+		for (int i = 0; i < size; i++) {
+			circles.add(toCircle(i));
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Starts the button search input: the frame's grayscale image masked by the color mask.
+ */
+public class ClipStage implements ImageStage {
+
+	@Override
+	public String getName() {
+		return "clipped_regions";
+	}
+
+	@Override
+	public PipelineStats.Stage getStatsStage() {
+		return PipelineStats.Stage.OTSU;
+	}
+
+	@Override
+	public void apply(StageContext context, Mat image) {
+		Core.bitwise_and(context.getFrame().getGray(), context.getColorMask(), image);
+	}
+
+	@Override
+	public void setScale(double scale) {
+	}
+
+	@Override
+	public ImageStage copy() {
+		return new ClipStage();
+	}
+
+	@Override
+	public void release() {
+	}
+
+}
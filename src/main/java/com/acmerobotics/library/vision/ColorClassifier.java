@@ -0,0 +1,135 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classifies every pixel of a three-channel 8-bit image against several {@link ScalarRange}s
+ * in a single pass, producing a label image where 0 means no class and {@code n} means the
+ * n-th class added (earlier classes win when ranges overlap).
+ * <p>
+ * Because every range is a box, the full 256x256x256 lookup table factors into one bitmask
+ * table per channel: bit {@code i} of {@code table[c][v]} is set when value {@code v} of
+ * channel {@code c} lies inside range {@code i}. A pixel is inside range {@code i} exactly when
+ * bit {@code i} survives the AND of its three channel lookups.
+ */
+public class ColorClassifier {
+
+	public static final int MAX_RANGES = 32;
+	public static final int MAX_CLASSES = 255;
+
+	private List<ScalarRange> classes;
+	private int[][] tables;
+	private int[] rangeLabels;
+	private Scalar[] labelScalars;
+	private byte[] pixels, labelData;
+	private Mat continuous;
+
+	public ColorClassifier() {
+		this.classes = new ArrayList<ScalarRange>();
+		this.tables = new int[3][256];
+		this.rangeLabels = new int[MAX_RANGES];
+		this.labelScalars = new Scalar[0];
+		this.continuous = NativeMemory.newMat("ColorClassifier");
+	}
+
+	public int addClass(ScalarRange range) {
+		if (classes.size() >= MAX_CLASSES) {
+			throw new IllegalStateException("too many classes: " + classes.size());
+		}
+		classes.add(range);
+		compile();
+		return classes.size();
+	}
+
+	public void clear() {
+		classes.clear();
+		compile();
+	}
+
+	public int getNumClasses() {
+		return classes.size();
+	}
+
+	public ScalarRange getClassRange(int label) {
+		return classes.get(label - 1);
+	}
+
+	public void compile() {
+		for (int c = 0; c < 3; c++) {
+			for (int v = 0; v < 256; v++) {
+				tables[c][v] = 0;
+			}
+		}
+
+		int bit = 0;
+		for (int label = 1; label <= classes.size(); label++) {
+			List<Scalar> ranges = classes.get(label - 1).getRanges();
+			for (int i = 0; i < ranges.size(); i += 2) {
+				if (bit >= MAX_RANGES) {
+					throw new IllegalStateException("too many ranges: at most " + MAX_RANGES + " are supported");
+				}
+				double[] lower = ranges.get(i).val;
+				double[] upper = ranges.get(i + 1).val;
+				for (int c = 0; c < 3; c++) {
+					for (int v = 0; v < 256; v++) {
+						if (v >= lower[c] && v <= upper[c]) {
+							tables[c][v] |= 1 << bit;
+						}
+					}
+				}
+				rangeLabels[bit] = label;
+				bit++;
+			}
+		}
+
+		labelScalars = new Scalar[classes.size() + 1];
+		for (int label = 0; label < labelScalars.length; label++) {
+			labelScalars[label] = new Scalar(label);
+		}
+	}
+
+	public void classify(Mat src, Mat labels) {
+		if (src.type() != CvType.CV_8UC3) {
+			throw new IllegalArgumentException("expected a CV_8UC3 image but got type " + src.type());
+		}
+
+		Mat input = src;
+		if (!src.isContinuous()) {
+			src.copyTo(continuous);
+			input = continuous;
+		}
+
+		int numPixels = input.rows() * input.cols();
+		if (pixels == null || pixels.length != 3 * numPixels) {
+			pixels = new byte[3 * numPixels];
+			labelData = new byte[numPixels];
+		}
+		input.get(0, 0, pixels);
+
+		int[] table0 = tables[0], table1 = tables[1], table2 = tables[2];
+		for (int i = 0, j = 0; i < numPixels; i++, j += 3) {
+			int bits = table0[pixels[j] & 0xff] & table1[pixels[j + 1] & 0xff] & table2[pixels[j + 2] & 0xff];
+			labelData[i] = bits == 0 ? 0 : (byte) rangeLabels[Integer.numberOfTrailingZeros(bits)];
+		}
+
+		labels.create(input.rows(), input.cols(), CvType.CV_8UC1);
+		labels.put(0, 0, labelData);
+	}
+
+	public void getMask(Mat labels, int label, Mat mask) {
+		Core.compare(labels, labelScalars[label], mask, Core.CMP_EQ);
+	}
+
+	public void release() {
+		NativeMemory.release(continuous);
+		pixels = null;
+		labelData = null;
+	}
+
+}
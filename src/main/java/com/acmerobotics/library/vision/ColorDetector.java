@@ -1,30 +1,69 @@
 package com.acmerobotics.library.vision;
 
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
+import org.opencv.core.Rect;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class ColorDetector {
 
+	// per-tile copies of the mask pipeline and buffers for tiled analysis
+	private static class TileWorker {
+		private final StagePipeline pipeline;
+		private final FrameContext frame = new FrameContext();
+		private final StageContext context = new StageContext();
+		private final Mat mask = NativeMemory.newMat("ColorDetector.tile");
+
+		private TileWorker(StagePipeline pipeline) {
+			this.pipeline = pipeline;
+		}
+
+		private void release() {
+			pipeline.release();
+			frame.release();
+			NativeMemory.release(mask);
+		}
+	}
+
 	public ScalarRange range;
 
+	private int classLabel;
 	private List<ColorRegion> regions;
-	private Mat mask, hsv, gray, temp;
+	private List<MatOfPoint> contours;
+	private Mat mask, temp, expandedMask, hierarchy;
+	private StagePipeline maskPipeline;
+	private StageContext stageContext;
+	private List<TileWorker> tileWorkers;
+	private double scale;
+	private Point contourOffset;
+	private FrameContext frame;
+	private PipelineStats stats;
 
 	public ColorDetector(ScalarRange range) {
 		this.range = range;
-		this.regions = null;
-		this.mask = new Mat();
-		this.hsv = new Mat();
-		this.gray = new Mat();
-		this.temp = new Mat();
+		this.regions = new ArrayList<ColorRegion>();
+		this.contours = new ArrayList<MatOfPoint>();
+		this.mask = NativeMemory.newMat("ColorDetector");
+		this.temp = NativeMemory.newMat("ColorDetector");
+		this.expandedMask = NativeMemory.newMat("ColorDetector");
+		this.hierarchy = NativeMemory.newMat("ColorDetector");
+		this.maskPipeline = StagePipeline.createMaskPipeline();
+		this.stageContext = new StageContext();
+		this.tileWorkers = new ArrayList<TileWorker>();
+		this.contourOffset = new Point();
+		this.scale = 1;
+		this.frame = new FrameContext();
+		this.stats = new PipelineStats();
 	}
 
 	public ScalarRange getColorRange() {
@@ -35,43 +74,169 @@ public class ColorDetector {
 		this.range = range;
 	}
 
-	public void analyzeImage(Mat image) {
-		Imgproc.cvtColor(image, hsv, Imgproc.COLOR_BGR2HSV);
-		Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+	/**
+	 * When the frame has a {@link ColorClassifier}, the mask is taken from its label image
+	 * for this label instead of running {@link ScalarRange#inRange} again. 0 disables this.
+	 */
+	public void setClassLabel(int classLabel) {
+		this.classLabel = classLabel;
+	}
 
-		this.mask = range.inRange(hsv);
+	public int getClassLabel() {
+		return classLabel;
+	}
 
-		if (BeaconAnalyzer.DEBUG) {
-			this.mask.copyTo(temp);
+	// scale of the working resolution relative to the 640 px the kernel sizes were tuned at
+	public void setScale(double scale) {
+		this.scale = scale;
+		maskPipeline.setScale(scale);
+		for (TileWorker worker : tileWorkers) {
+			worker.pipeline.setScale(scale);
 		}
+	}
 
-		Size originalSize = new Size(mask.cols(), mask.rows());
-		Imgproc.resize(mask, mask, new Size(originalSize.width / 4, originalSize.height / 4));
+	public void setStats(PipelineStats stats) {
+		this.stats = stats;
+		this.frame.setStats(stats);
+		maskPipeline.setStats(stats);
+		for (TileWorker worker : tileWorkers) {
+			worker.pipeline.setStats(stats);
+			worker.frame.setStats(stats);
+		}
+	}
+
+	/**
+	 * Replaces the stages that turn the frame into this detector's binary mask (by default
+	 * {@link StagePipeline#createMaskPipeline()}). The previous pipeline is released.
+	 */
+	public void setMaskPipeline(StagePipeline maskPipeline) {
+		this.maskPipeline.release();
+		this.maskPipeline = maskPipeline;
+		releaseTileWorkers();
+		maskPipeline.setScale(scale);
+		maskPipeline.setStats(stats);
+	}
+
+	public StagePipeline getMaskPipeline() {
+		return maskPipeline;
+	}
+
+	public void analyzeImage(Mat image) {
+		frame.setImage(image);
+		analyzeImage(frame, null, "");
+	}
 
-		if (BeaconAnalyzer.DEBUG) {
-	        Imgproc.putText(temp, Integer.toString(Core.countNonZero(temp)), new Point(5, 30), Core.FONT_HERSHEY_SIMPLEX, 1, new Scalar(255), 2);
-	        BeaconAnalyzer.intermediates.put("detector_mask_raw_" + BeaconAnalyzer.currentColor, temp);
+	public void analyzeImage(FrameContext frame, BeaconAnalyzer.AnalysisIntermediates intermediates, String debugTag) {
+		// convert up front so the shared color conversion isn't billed to the first stage
+		if (classLabel > 0 && frame.getClassifier() != null) {
+			frame.getLabels();
+		} else {
+			frame.getHsv();
 		}
 
-		Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
-		Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_OPEN, kernel);
+		stageContext.set(frame, range, classLabel, null);
+		maskPipeline.apply(stageContext, mask, intermediates, debugTag);
 
-		Mat kernel2 = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(11, 11));
-        Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_CLOSE, kernel2);
+		findRegions(frame);
+	}
+
+	/**
+	 * Builds the mask tile by tile on {@code executor} (or sequentially when it is null) and
+	 * then extracts the contours of the stitched mask in one pass, so regions that cross tile
+	 * seams come out as single regions. Each tile runs a copy of the mask pipeline over the
+	 * tile grown by the grid's overlap and keeps only its core. Tiles always threshold with
+	 * this detector's range; the frame's single-pass classifier is not used.
+	 */
+	public void analyzeImage(final FrameContext frame, BeaconAnalyzer.AnalysisIntermediates intermediates, String debugTag,
+							 final TileGrid tiles, ExecutorService executor) {
+		final Mat image = frame.getImage();
+		tiles.layout(image.cols(), image.rows());
+		mask.create(image.rows(), image.cols(), CvType.CV_8UC1);
+		while (tileWorkers.size() < tiles.size()) {
+			TileWorker worker = new TileWorker(maskPipeline.copy());
+			worker.pipeline.setScale(scale);
+			worker.pipeline.setStats(stats);
+			worker.frame.setStats(stats);
+			tileWorkers.add(worker);
+		}
+
+		if (executor == null || tiles.size() < 2) {
+			for (int i = 0; i < tiles.size(); i++) {
+				buildTileMask(frame, image, tiles, i);
+			}
+		} else {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < tiles.size(); i++) {
+				final int index = i;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						buildTileMask(frame, image, tiles, index);
+						return null;
+					}
+				});
+			}
+			try {
+				for (Future<Void> result : executor.invokeAll(tasks)) {
+					result.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while building tile masks", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("tile mask failed", e.getCause());
+			}
+		}
+
+		if (intermediates != null && intermediates.captures("detector_mask")) intermediates.put("detector_mask_" + debugTag, mask);
 
-		Imgproc.resize(mask, mask, originalSize);
+		findRegions(frame);
+	}
+
+	private void buildTileMask(FrameContext frame, Mat image, TileGrid tiles, int i) {
+		TileWorker worker = tileWorkers.get(i);
+		Rect tile = tiles.getTile(i), core = tiles.getCore(i);
 
-		if (BeaconAnalyzer.DEBUG) BeaconAnalyzer.intermediates.put("detector_mask_" + BeaconAnalyzer.currentColor, this.mask);
+		Mat tileImage = image.submat(tile);
+		worker.frame.setImage(tileImage, frame.getOffsetX() + tile.x, frame.getOffsetY() + tile.y);
+		worker.frame.getHsv();
+		worker.context.set(worker.frame, range, 0, null);
+		worker.pipeline.apply(worker.context, worker.mask, null, "");
 
+		// the tiles' cores are disjoint, so the workers can write into the shared mask concurrently
+		Mat tileCore = worker.mask.submat(core.y - tile.y, core.y - tile.y + core.height, core.x - tile.x, core.x - tile.x + core.width);
+		Mat maskCore = mask.submat(core);
+		tileCore.copyTo(maskCore);
+		NativeMemory.release(tileCore);
+		NativeMemory.release(maskCore);
+		NativeMemory.release(tileImage);
+	}
+
+	private void findRegions(FrameContext frame) {
+		long contoursStart = stats.start();
 		mask.copyTo(temp);
-		List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
-		Imgproc.findContours(temp, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+		contours.clear();
+		contourOffset.x = frame.getOffsetX();
+		contourOffset.y = frame.getOffsetY();
+		Imgproc.findContours(temp, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE, contourOffset);
 
-		regions = new ArrayList<ColorRegion>();
+		// the previous frame's regions are owned here and released once they're replaced
+		for (ColorRegion region : regions) {
+			region.release();
+		}
+		regions.clear();
 		for (MatOfPoint contour : contours) {
-			regions.add(new ColorRegion(contour));
+			regions.add(new ColorRegion(NativeMemory.track(contour, "ColorDetector.contour")));
 		}
+		stats.record(PipelineStats.Stage.CONTOURS, contoursStart);
+		stats.count(PipelineStats.Counter.CONTOURS, contours.size());
+	}
 
+	private void releaseTileWorkers() {
+		for (TileWorker worker : tileWorkers) {
+			worker.release();
+		}
+		tileWorkers.clear();
 	}
 
 	public List<ColorRegion> getRegions() {
@@ -79,8 +244,12 @@ public class ColorDetector {
 	}
 
 	public void clipRegion(Mat src, Mat dest) {
-		Mat tempMask = Util.expandChannels(this.mask, dest.channels());
-		Core.bitwise_and(src, tempMask, dest);
+		if (src.channels() == 1) {
+			Core.bitwise_and(src, this.mask, dest);
+		} else {
+			Util.expandChannels(this.mask, src.channels(), expandedMask);
+			Core.bitwise_and(src, expandedMask, dest);
+		}
 	}
 
 	public Mat getMask() {
@@ -89,22 +258,23 @@ public class ColorDetector {
 
 	public void release() {
 		if (mask != null) {
-			mask.release();
-		}
-		if (hsv != null) {
-			hsv.release();
+			NativeMemory.release(mask);
 		}
-		if (gray != null) {
-			gray.release();
+		NativeMemory.release(expandedMask);
+		NativeMemory.release(hierarchy);
+		maskPipeline.release();
+		releaseTileWorkers();
+		if (frame != null) {
+			frame.release();
 		}
 		if (temp != null) {
-			temp.release();
+			NativeMemory.release(temp);
 		}
 		if (regions != null) {
 			for (ColorRegion region : regions) {
 				region.release();
 			}
-			regions = null;
+			regions.clear();
 		}
 	}
 
@@ -8,7 +8,7 @@ import org.opencv.imgproc.Imgproc;
 import java.util.ArrayList;
 import java.util.List;
 
-public class ColorRegion {
+public class ColorRegion implements AutoCloseable {
 	
 	private MatOfPoint contour;
 	
@@ -34,8 +34,13 @@ public class ColorRegion {
 
 	public void release() {
 		if (contour != null) {
-			contour.release();
+			NativeMemory.release(contour);
 		}
 	}
 
+	@Override
+	public void close() {
+		release();
+	}
+
 }
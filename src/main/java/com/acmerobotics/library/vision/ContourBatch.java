@@ -0,0 +1,158 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All the contours returned by one {@code findContours} call copied into a single packed
+ * {@code x0, y0, x1, y1, ...} array with one native concatenation and one bulk {@code get},
+ * so shape measurements can be made in plain Java without a JNI round trip per contour.
+ */
+public class ContourBatch {
+
+	private int[] points, starts;
+	private float[] floatPoints;
+	private int count;
+	private List<Mat> mats;
+	private Mat concatenated;
+
+	public ContourBatch() {
+		this.points = new int[0];
+		this.starts = new int[1];
+		this.floatPoints = new float[0];
+		this.mats = new ArrayList<Mat>();
+	}
+
+	public void read(List<MatOfPoint> contours) {
+		count = contours.size();
+		if (starts.length < count + 1) {
+			starts = new int[count + 1];
+		}
+		starts[0] = 0;
+		for (int i = 0; i < count; i++) {
+			starts[i + 1] = starts[i] + contours.get(i).rows();
+		}
+		int numPoints = starts[count];
+		if (numPoints == 0) {
+			return;
+		}
+		if (points.length < 2 * numPoints) {
+			points = new int[2 * numPoints];
+		}
+
+		Mat all;
+		if (count == 1) {
+			all = contours.get(0);
+		} else {
+			if (concatenated == null) {
+				concatenated = NativeMemory.newMat("ContourBatch");
+			}
+			mats.clear();
+			mats.addAll(contours);
+			Core.vconcat(mats, concatenated);
+			mats.clear();
+			all = concatenated;
+		}
+		all.get(0, 0, points);
+	}
+
+	// packs contours that are already x0, y0, x1, y1, ... arrays
+	void read(int[]... contours) {
+		count = contours.length;
+		if (starts.length < count + 1) {
+			starts = new int[count + 1];
+		}
+		starts[0] = 0;
+		for (int i = 0; i < count; i++) {
+			starts[i + 1] = starts[i] + contours[i].length / 2;
+		}
+		if (points.length < 2 * starts[count]) {
+			points = new int[2 * starts[count]];
+		}
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(contours[i], 0, points, 2 * starts[i], contours[i].length);
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getLength(int i) {
+		return starts[i + 1] - starts[i];
+	}
+
+	// minX, minY, maxX (exclusive), maxY (exclusive), matching Imgproc.boundingRect()
+	public void getBounds(int i, int[] bounds) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int j = 2 * starts[i], end = 2 * starts[i + 1]; j < end; j += 2) {
+			int x = points[j], y = points[j + 1];
+			if (x < minX) minX = x;
+			if (x > maxX) maxX = x;
+			if (y < minY) minY = y;
+			if (y > maxY) maxY = y;
+		}
+		bounds[0] = minX;
+		bounds[1] = minY;
+		bounds[2] = maxX + 1;
+		bounds[3] = maxY + 1;
+	}
+
+	// length of the closed polygon
+	public double getPerimeter(int i) {
+		int first = 2 * starts[i], end = 2 * starts[i + 1];
+		double perimeter = 0;
+		int prevX = points[end - 2], prevY = points[end - 1];
+		for (int j = first; j < end; j += 2) {
+			int dx = points[j] - prevX, dy = points[j + 1] - prevY;
+			perimeter += Math.sqrt(dx * dx + dy * dy);
+			prevX = points[j];
+			prevY = points[j + 1];
+		}
+		return perimeter;
+	}
+
+	// enclosed area of the polygon (shoelace formula)
+	public double getArea(int i) {
+		int first = 2 * starts[i], end = 2 * starts[i + 1];
+		long twiceArea = 0;
+		int prevX = points[end - 2], prevY = points[end - 1];
+		for (int j = first; j < end; j += 2) {
+			twiceArea += (long) prevX * points[j + 1] - (long) points[j] * prevY;
+			prevX = points[j];
+			prevY = points[j + 1];
+		}
+		return Math.abs(twiceArea) / 2.0;
+	}
+
+	// 4 pi area / perimeter^2: 1 for a circle, close to 0 for open curves traced on both sides
+	public double getCircularity(int i) {
+		double perimeter = getPerimeter(i);
+		return perimeter == 0 ? 0 : 4 * Math.PI * getArea(i) / (perimeter * perimeter);
+	}
+
+	public void toMatOfPoint2f(int i, MatOfPoint2f dest) {
+		int first = 2 * starts[i], length = 2 * getLength(i);
+		if (floatPoints.length < length) {
+			floatPoints = new float[length];
+		}
+		for (int j = 0; j < length; j++) {
+			floatPoints[j] = points[first + j];
+		}
+		dest.alloc(length / 2);
+		dest.put(0, 0, floatPoints);
+	}
+
+	public void release() {
+		if (concatenated != null) {
+			NativeMemory.release(concatenated);
+		}
+	}
+
+}
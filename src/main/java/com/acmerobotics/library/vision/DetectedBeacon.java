@@ -0,0 +1,125 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain-Java copy of a {@link Beacon}: its geometry, score and buttons without any reference
+ * to the analyzer's regions or native contours, so it can be kept across frames and handed
+ * to other threads.
+ */
+public class DetectedBeacon {
+
+	public final BeaconColor leftColor, rightColor;
+	// rotated bounds
+	public final double centerX, centerY, width, height, angle;
+	// axis-aligned bounding rect of the rotated bounds
+	public final int rectX, rectY, rectWidth, rectHeight;
+	public final double area;
+	public final int score;
+	public final String scoreString;
+	// rightButtons is -1 for beacons made of a single region, like Beacon.Score
+	public final int leftButtons, rightButtons;
+	public final double[] buttonX, buttonY;
+	public final int[] buttonRadius;
+
+	public DetectedBeacon(Beacon beacon) {
+		leftColor = beacon.getLeftRegion().getColor();
+		rightColor = beacon.getRightRegion().getColor();
+
+		RotatedRect bounds = beacon.getBounds();
+		centerX = bounds.center.x;
+		centerY = bounds.center.y;
+		width = bounds.size.width;
+		height = bounds.size.height;
+		angle = bounds.angle;
+		Rect rect = bounds.boundingRect();
+		rectX = rect.x;
+		rectY = rect.y;
+		rectWidth = rect.width;
+		rectHeight = rect.height;
+		area = beacon.getBoundsArea();
+
+		Beacon.Score beaconScore = beacon.getScore();
+		score = beaconScore.getNumericScore();
+		scoreString = beaconScore.toString();
+		leftButtons = beaconScore.leftButtons;
+		rightButtons = beaconScore.rightButtons;
+
+		List<Circle> buttons = beacon.getButtons();
+		buttonX = new double[buttons.size()];
+		buttonY = new double[buttons.size()];
+		buttonRadius = new int[buttons.size()];
+		for (int i = 0; i < buttons.size(); i++) {
+			Circle button = buttons.get(i);
+			buttonX[i] = button.pt.x;
+			buttonY[i] = button.pt.y;
+			buttonRadius[i] = button.radius;
+		}
+	}
+
+	// e.g. for results read back from a FrameRecorder log
+	public DetectedBeacon(BeaconColor leftColor, BeaconColor rightColor, double centerX, double centerY, double width, double height,
+						  double angle, double area, int score, String scoreString, int leftButtons, int rightButtons,
+						  double[] buttonX, double[] buttonY, int[] buttonRadius) {
+		this.leftColor = leftColor;
+		this.rightColor = rightColor;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.width = width;
+		this.height = height;
+		this.angle = angle;
+		Rect rect = getBounds().boundingRect();
+		this.rectX = rect.x;
+		this.rectY = rect.y;
+		this.rectWidth = rect.width;
+		this.rectHeight = rect.height;
+		this.area = area;
+		this.score = score;
+		this.scoreString = scoreString;
+		this.leftButtons = leftButtons;
+		this.rightButtons = rightButtons;
+		this.buttonX = buttonX;
+		this.buttonY = buttonY;
+		this.buttonRadius = buttonRadius;
+	}
+
+	public static void fromBeacons(List<Beacon> beacons, List<DetectedBeacon> detected) {
+		for (Beacon beacon : beacons) {
+			detected.add(new DetectedBeacon(beacon));
+		}
+	}
+
+	public RotatedRect getBounds() {
+		return new RotatedRect(new Point(centerX, centerY), new Size(width, height), angle);
+	}
+
+	public Rect getBoundingRect() {
+		return new Rect(rectX, rectY, rectWidth, rectHeight);
+	}
+
+	public int getNumButtons() {
+		return buttonRadius.length;
+	}
+
+	public List<Circle> getButtons() {
+		List<Circle> buttons = new ArrayList<Circle>();
+		for (int i = 0; i < buttonRadius.length; i++) {
+			buttons.add(new Circle(new Point(buttonX[i], buttonY[i]), buttonRadius[i]));
+		}
+		return buttons;
+	}
+
+	@Override
+	public String toString() {
+		return leftColor + "/" + rightColor;
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Holds a BGR frame along with the colorspace conversions derived from it. Each conversion
+ * is computed lazily at most once per frame and the resulting Mats are shared by every
+ * detector and stage that asks for them, so they must be treated as read-only.
+ */
+public class FrameContext {
+
+	private Mat bgr, hsv, gray, labels;
+	private int offsetX, offsetY;
+	private boolean hsvValid, grayValid, labelsValid;
+	private ColorClassifier classifier;
+	private PipelineStats stats;
+
+	public FrameContext() {
+		this.stats = new PipelineStats();
+		this.hsv = NativeMemory.newMat("FrameContext");
+		this.gray = NativeMemory.newMat("FrameContext");
+		this.labels = NativeMemory.newMat("FrameContext");
+	}
+
+	public FrameContext(Mat bgr) {
+		this();
+		setImage(bgr);
+	}
+
+	public synchronized void setImage(Mat bgr) {
+		setImage(bgr, 0, 0);
+	}
+
+	/**
+	 * Sets the frame to a region of a larger image whose top-left corner lies at
+	 * ({@code offsetX}, {@code offsetY}); detections are reported in the larger image's
+	 * coordinates.
+	 */
+	public synchronized void setImage(Mat bgr, int offsetX, int offsetY) {
+		this.bgr = bgr;
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+		this.hsvValid = false;
+		this.grayValid = false;
+		this.labelsValid = false;
+	}
+
+	public synchronized void setClassifier(ColorClassifier classifier) {
+		this.classifier = classifier;
+		this.labelsValid = false;
+	}
+
+	public synchronized ColorClassifier getClassifier() {
+		return classifier;
+	}
+
+	public synchronized void setStats(PipelineStats stats) {
+		this.stats = stats;
+	}
+
+	public synchronized Mat getImage() {
+		return bgr;
+	}
+
+	public synchronized int getOffsetX() {
+		return offsetX;
+	}
+
+	public synchronized int getOffsetY() {
+		return offsetY;
+	}
+
+	public synchronized Mat getHsv() {
+		if (!hsvValid) {
+			long start = stats.start();
+			Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+			stats.record(PipelineStats.Stage.COLOR_CONVERT, start);
+			hsvValid = true;
+		}
+		return hsv;
+	}
+
+	public synchronized Mat getGray() {
+		if (!grayValid) {
+			long start = stats.start();
+			Imgproc.cvtColor(bgr, gray, Imgproc.COLOR_BGR2GRAY);
+			stats.record(PipelineStats.Stage.COLOR_CONVERT, start);
+			grayValid = true;
+		}
+		return gray;
+	}
+
+	public synchronized Mat getLabels() {
+		if (!labelsValid) {
+			Mat hsv = getHsv();
+			long start = stats.start();
+			classifier.classify(hsv, labels);
+			stats.record(PipelineStats.Stage.THRESHOLD, start);
+			labelsValid = true;
+		}
+		return labels;
+	}
+
+	public synchronized void release() {
+		NativeMemory.release(hsv);
+		NativeMemory.release(gray);
+		NativeMemory.release(labels);
+		bgr = null;
+		hsvValid = false;
+		grayValid = false;
+		labelsValid = false;
+	}
+
+}
@@ -0,0 +1,263 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends the analyzer's input frames, their timestamps and the beacons found in them to a log
+ * that {@link FrameReplayer} can run back through an analyzer. Frames are copied into a fixed
+ * pool of Mats and written by a background thread; when the pool is exhausted the frame is
+ * dropped rather than blocking the analysis thread.
+ *
+ * <p>The log is a header followed by one record per frame, all big-endian:
+ * <pre>
+ * header: int MAGIC, int VERSION
+ * record: int length (of the rest of the record)
+ *         long frameNumber, long timestampNanos, long analysisNanos
+ *         int rows, int cols, int type, int dataLength, byte[dataLength] pixels
+ *         int numBeacons, numBeacons x beacon
+ * beacon: byte leftColor, byte rightColor (ordinals)
+ *         double centerX, centerY, width, height, angle, area
+ *         int score, UTF scoreString, int leftButtons, int rightButtons
+ *         int numButtons, numButtons x (double x, double y, int radius)
+ * </pre>
+ * Frames must be 8-bit, like camera frames. Timestamps are {@link System#nanoTime()} when the
+ * analyzer receives the frame, and the analysis time excludes the recorder's copy of it, so it
+ * measures the same thing as an unrecorded replay. Records are only ever appended, so a log
+ * cut short by a crash is still readable up to its last whole record.
+ */
+public class FrameRecorder {
+
+	public static final int MAGIC = 0x56524543;
+	public static final int VERSION = 1;
+
+	private static class Slot {
+		private final Mat image = NativeMemory.newMat("FrameRecorder");
+		private final List<DetectedBeacon> beacons = new ArrayList<DetectedBeacon>();
+		private long frameNumber, timestamp, analysisStart, analysisNanos;
+	}
+
+	private final File file;
+	private final BlockingQueue<Slot> free, pending;
+	private final AtomicLong written, dropped, failed;
+	private long frameNumber;
+	private Slot current;
+	private volatile boolean recording, stopping;
+	private Thread writer;
+
+	public FrameRecorder(File file, int capacity) {
+		this.file = file;
+		this.free = new ArrayBlockingQueue<Slot>(capacity);
+		this.pending = new ArrayBlockingQueue<Slot>(capacity);
+		for (int i = 0; i < capacity; i++) {
+			free.add(new Slot());
+		}
+		this.written = new AtomicLong();
+		this.dropped = new AtomicLong();
+		this.failed = new AtomicLong();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Opens the log, writing the header if it's new, and starts the writer thread. An existing
+	 * log is appended to.
+	 */
+	public synchronized void start() throws IOException {
+		if (writer != null) {
+			return;
+		}
+		boolean newFile = !file.exists() || file.length() == 0;
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+		if (newFile) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+		}
+		stopping = false;
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop(out);
+			}
+		}, "FrameRecorder");
+		writer.setDaemon(true);
+		writer.start();
+		recording = true;
+	}
+
+	// writes out the frames that are already queued and closes the log
+	public synchronized void stop() {
+		if (writer == null) {
+			return;
+		}
+		recording = false;
+		stopping = true;
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
+
+	private void writeLoop(DataOutputStream out) {
+		ByteArrayOutputStream record = new ByteArrayOutputStream(1 << 16);
+		DataOutputStream recordOut = new DataOutputStream(record);
+		byte[] data = new byte[0];
+		try {
+			while (true) {
+				Slot slot = pending.poll(50, TimeUnit.MILLISECONDS);
+				if (slot == null) {
+					if (stopping) {
+						break;
+					}
+					// nothing new, so push what's buffered to the file
+					out.flush();
+					continue;
+				}
+				try {
+					int length = (int) (slot.image.total() * slot.image.elemSize());
+					if (data.length < length) {
+						data = new byte[length];
+					}
+					if (length > 0) {
+						slot.image.get(0, 0, data);
+					}
+					record.reset();
+					writeRecord(recordOut, slot, data, length);
+					recordOut.flush();
+					out.writeInt(record.size());
+					record.writeTo(out);
+					written.incrementAndGet();
+				} catch (IOException e) {
+					failed.incrementAndGet();
+				} finally {
+					free.offer(slot);
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} catch (IOException e) {
+			failed.incrementAndGet();
+		} finally {
+			try {
+				out.close();
+			} catch (IOException e) {
+				failed.incrementAndGet();
+			}
+		}
+	}
+
+	private static void writeRecord(DataOutputStream out, Slot slot, byte[] data, int length) throws IOException {
+		out.writeLong(slot.frameNumber);
+		out.writeLong(slot.timestamp);
+		out.writeLong(slot.analysisNanos);
+		out.writeInt(slot.image.rows());
+		out.writeInt(slot.image.cols());
+		out.writeInt(slot.image.type());
+		out.writeInt(length);
+		out.write(data, 0, length);
+
+		out.writeInt(slot.beacons.size());
+		for (DetectedBeacon beacon : slot.beacons) {
+			out.writeByte(beacon.leftColor.ordinal());
+			out.writeByte(beacon.rightColor.ordinal());
+			out.writeDouble(beacon.centerX);
+			out.writeDouble(beacon.centerY);
+			out.writeDouble(beacon.width);
+			out.writeDouble(beacon.height);
+			out.writeDouble(beacon.angle);
+			out.writeDouble(beacon.area);
+			out.writeInt(beacon.score);
+			out.writeUTF(beacon.scoreString);
+			out.writeInt(beacon.leftButtons);
+			out.writeInt(beacon.rightButtons);
+			out.writeInt(beacon.getNumButtons());
+			for (int i = 0; i < beacon.getNumButtons(); i++) {
+				out.writeDouble(beacon.buttonX[i]);
+				out.writeDouble(beacon.buttonY[i]);
+				out.writeInt(beacon.buttonRadius[i]);
+			}
+		}
+	}
+
+	/**
+	 * Called by the analyzer before it touches the frame, since the analysis may resize it in
+	 * place. Skips the frame if the recorder isn't running or all slots are queued.
+	 */
+	public void beginFrame(Mat image) {
+		long timestamp = System.nanoTime();
+		frameNumber++;
+		current = null;
+		if (!recording) {
+			return;
+		}
+		Slot slot = free.poll();
+		if (slot == null) {
+			dropped.incrementAndGet();
+			return;
+		}
+		image.copyTo(slot.image);
+		slot.frameNumber = frameNumber;
+		slot.timestamp = timestamp;
+		// the analysis clock starts after the copy so recording doesn't inflate it
+		slot.analysisStart = System.nanoTime();
+		current = slot;
+	}
+
+	// called by the analyzer with the frame's results, hands the frame to the writer
+	public void endFrame(List<Beacon> beacons) {
+		Slot slot = current;
+		if (slot == null) {
+			return;
+		}
+		long analysisNanos = System.nanoTime() - slot.analysisStart;
+		current = null;
+		slot.beacons.clear();
+		DetectedBeacon.fromBeacons(beacons, slot.beacons);
+		slot.analysisNanos = analysisNanos;
+		pending.offer(slot);
+	}
+
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public void release() {
+		stop();
+		Slot slot;
+		while ((slot = pending.poll()) != null) {
+			free.offer(slot);
+		}
+		if (current != null) {
+			free.offer(current);
+			current = null;
+		}
+		for (Slot freeSlot : free) {
+			NativeMemory.release(freeSlot.image);
+		}
+	}
+
+}
@@ -0,0 +1,291 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory-maps a {@link FrameRecorder} log and runs its frames back through an analyzer, either
+ * as fast as possible or at the pace they were recorded, comparing the beacons and analysis
+ * times with the recorded ones. The log is mapped in segments of up to 1 GB, so it can be
+ * larger than a single mapping; a truncated last record is ignored.
+ */
+public class FrameReplayer implements AutoCloseable {
+
+	private static final long MAX_SEGMENT_SIZE = 1 << 30;
+	private static final BeaconColor[] COLORS = BeaconColor.values();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public static class Report {
+		public final int frames;
+		// frame numbers of the replayed frames whose beacons differ from the recorded ones
+		public final List<Long> mismatches;
+		// analysis times in microseconds
+		public final LatencyHistogram recordedLatency, replayedLatency;
+		public final long wallNanos;
+
+		public Report(int frames, List<Long> mismatches, LatencyHistogram recordedLatency, LatencyHistogram replayedLatency, long wallNanos) {
+			this.frames = frames;
+			this.mismatches = mismatches;
+			this.recordedLatency = recordedLatency;
+			this.replayedLatency = replayedLatency;
+			this.wallNanos = wallNanos;
+		}
+
+		public double getFramesPerSecond() {
+			return wallNanos == 0 ? 0 : frames * 1e9 / wallNanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("frames=%d mismatched=%d%n", frames, mismatches.size()));
+			sb.append(String.format("%.1f frames/s (%.2f s wall)%n", getFramesPerSecond(), wallNanos / 1e9));
+			sb.append(String.format("recorded  mean=%.2f ms p50=%.2f ms p99=%.2f ms%n",
+					recordedLatency.getMean() / 1000, recordedLatency.getPercentile(50) / 1000.0, recordedLatency.getPercentile(99) / 1000.0));
+			sb.append(String.format("replayed  mean=%.2f ms p50=%.2f ms p99=%.2f ms%n",
+					replayedLatency.getMean() / 1000, replayedLatency.getPercentile(50) / 1000.0, replayedLatency.getPercentile(99) / 1000.0));
+			return sb.toString();
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments;
+	// segment and offset in it of each record, just past its length
+	private int[] recordSegments, recordOffsets;
+	private int size;
+	private double tolerance;
+	private byte[] data;
+
+	public FrameReplayer(File log) throws IOException {
+		this.file = new RandomAccessFile(log, "r");
+		this.channel = file.getChannel();
+		this.segments = new ArrayList<MappedByteBuffer>();
+		this.recordSegments = new int[64];
+		this.recordOffsets = new int[64];
+		this.tolerance = 1;
+		this.data = new byte[0];
+
+		ByteBuffer header = ByteBuffer.allocate(8);
+		channel.read(header, 0);
+		header.flip();
+		if (header.remaining() < 8 || header.getInt() != FrameRecorder.MAGIC) {
+			close();
+			throw new IOException(log + " is not a frame log");
+		}
+		int version = header.getInt();
+		if (version != FrameRecorder.VERSION) {
+			close();
+			throw new IOException("unsupported frame log version " + version);
+		}
+		index();
+	}
+
+	private void index() throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		long fileSize = channel.size();
+		long position = 8, segmentStart = 8;
+		while (position + 4 <= fileSize) {
+			lengthBuffer.clear();
+			channel.read(lengthBuffer, position);
+			int length = lengthBuffer.getInt(0);
+			if (length < 0 || position + 4 + length > fileSize) {
+				break;
+			}
+			if (position > segmentStart && position + 4 + length - segmentStart > MAX_SEGMENT_SIZE) {
+				segments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, position - segmentStart));
+				segmentStart = position;
+			}
+			if (size == recordOffsets.length) {
+				recordSegments = Arrays.copyOf(recordSegments, 2 * size);
+				recordOffsets = Arrays.copyOf(recordOffsets, 2 * size);
+			}
+			recordSegments[size] = segments.size();
+			recordOffsets[size] = (int) (position + 4 - segmentStart);
+			size++;
+			position += 4 + length;
+		}
+		if (position > segmentStart) {
+			segments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, position - segmentStart));
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// maximum difference in pixels of a beacon's center and size before it counts as a mismatch
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public long getFrameNumber(int i) {
+		return segments.get(recordSegments[i]).getLong(recordOffsets[i]);
+	}
+
+	// System.nanoTime() when the frame was recorded
+	public long getTimestamp(int i) {
+		return segments.get(recordSegments[i]).getLong(recordOffsets[i] + 8);
+	}
+
+	public long getAnalysisNanos(int i) {
+		return segments.get(recordSegments[i]).getLong(recordOffsets[i] + 16);
+	}
+
+	/**
+	 * Copies the i-th recorded frame into {@code image} and appends the beacons recorded for it
+	 * to {@code beacons}.
+	 */
+	public void readFrame(int i, Mat image, List<DetectedBeacon> beacons) {
+		ByteBuffer record = segments.get(recordSegments[i]).duplicate();
+		record.position(recordOffsets[i] + 24);
+		int rows = record.getInt();
+		int cols = record.getInt();
+		int type = record.getInt();
+		int length = record.getInt();
+		if (data.length < length) {
+			data = new byte[length];
+		}
+		record.get(data, 0, length);
+		image.create(rows, cols, type);
+		if (length > 0) {
+			image.put(0, 0, data);
+		}
+
+		int numBeacons = record.getInt();
+		for (int b = 0; b < numBeacons; b++) {
+			beacons.add(readBeacon(record));
+		}
+	}
+
+	private static DetectedBeacon readBeacon(ByteBuffer record) {
+		BeaconColor leftColor = COLORS[record.get()];
+		BeaconColor rightColor = COLORS[record.get()];
+		double centerX = record.getDouble();
+		double centerY = record.getDouble();
+		double width = record.getDouble();
+		double height = record.getDouble();
+		double angle = record.getDouble();
+		double area = record.getDouble();
+		int score = record.getInt();
+		// written with writeUTF; score strings are plain ASCII
+		byte[] scoreBytes = new byte[record.getShort() & 0xffff];
+		record.get(scoreBytes);
+		String scoreString = new String(scoreBytes, UTF_8);
+		int leftButtons = record.getInt();
+		int rightButtons = record.getInt();
+		int numButtons = record.getInt();
+		double[] buttonX = new double[numButtons];
+		double[] buttonY = new double[numButtons];
+		int[] buttonRadius = new int[numButtons];
+		for (int i = 0; i < numButtons; i++) {
+			buttonX[i] = record.getDouble();
+			buttonY[i] = record.getDouble();
+			buttonRadius[i] = record.getInt();
+		}
+		return new DetectedBeacon(leftColor, rightColor, centerX, centerY, width, height, angle, area,
+				score, scoreString, leftButtons, rightButtons, buttonX, buttonY, buttonRadius);
+	}
+
+	/**
+	 * Runs every recorded frame through {@code analyzer}. With {@code realTime} each frame is
+	 * held back until the time between it and the first frame matches the recording, otherwise
+	 * frames are fed as fast as the analyzer takes them. The analyzer should be set up the way
+	 * the recording one was, and must not be recording to this log.
+	 */
+	public Report replay(BeaconAnalyzer analyzer, ButtonDetectionMethod buttonMethod, boolean realTime) {
+		List<Long> mismatches = new ArrayList<Long>();
+		LatencyHistogram recordedLatency = new LatencyHistogram();
+		LatencyHistogram replayedLatency = new LatencyHistogram();
+		List<DetectedBeacon> recorded = new ArrayList<DetectedBeacon>();
+		List<DetectedBeacon> replayed = new ArrayList<DetectedBeacon>();
+		Mat frame = NativeMemory.newMat("FrameReplayer");
+
+		try {
+			long firstTimestamp = size > 0 ? getTimestamp(0) : 0;
+			long wallStart = System.nanoTime();
+			for (int i = 0; i < size; i++) {
+				recorded.clear();
+				replayed.clear();
+				readFrame(i, frame, recorded);
+
+				if (realTime) {
+					long wait = (getTimestamp(i) - firstTimestamp) - (System.nanoTime() - wallStart);
+					if (wait > 0) {
+						try {
+							Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new RuntimeException("interrupted while replaying", e);
+						}
+					}
+				}
+
+				long start = System.nanoTime();
+				analyzer.detect(frame, buttonMethod, replayed);
+				replayedLatency.record((System.nanoTime() - start) / 1000);
+				recordedLatency.record(getAnalysisNanos(i) / 1000);
+
+				if (!matches(recorded, replayed)) {
+					mismatches.add(getFrameNumber(i));
+				}
+			}
+			return new Report(size, mismatches, recordedLatency, replayedLatency, System.nanoTime() - wallStart);
+		} finally {
+			NativeMemory.release(frame);
+		}
+	}
+
+	private boolean matches(List<DetectedBeacon> recorded, List<DetectedBeacon> replayed) {
+		if (recorded.size() != replayed.size()) {
+			return false;
+		}
+		for (int i = 0; i < recorded.size(); i++) {
+			DetectedBeacon a = recorded.get(i), b = replayed.get(i);
+			if (a.leftColor != b.leftColor || a.rightColor != b.rightColor || a.score != b.score
+					|| Math.abs(a.centerX - b.centerX) > tolerance || Math.abs(a.centerY - b.centerY) > tolerance
+					|| Math.abs(a.width - b.width) > tolerance || Math.abs(a.height - b.height) > tolerance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segments.clear();
+		file.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: FrameReplayer <log file> [realtime]");
+			System.exit(1);
+		}
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+		FrameReplayer replayer = new FrameReplayer(new File(args[0]));
+		BeaconAnalyzer analyzer = new BeaconAnalyzer();
+		boolean realTime = args.length > 1 && args[1].equals("realtime");
+		Report report = replayer.replay(analyzer, ButtonDetectionMethod.BUTTON_ELLIPSE, realTime);
+		analyzer.release();
+		replayer.close();
+		System.out.print(report);
+		System.exit(report.mismatches.isEmpty() ? 0 : 1);
+	}
+
+}
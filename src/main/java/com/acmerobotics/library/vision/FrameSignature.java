@@ -0,0 +1,76 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Tiny area-averaged thumbnail of a frame used to tell whether anything has meaningfully
+ * changed since a reference frame. The change score is the largest absolute difference of any
+ * thumbnail block and channel (0-255), so a local change such as a beacon flipping color isn't
+ * diluted by the rest of the frame while per-pixel sensor noise is averaged away.
+ */
+public class FrameSignature {
+
+	public static final int DEFAULT_WIDTH = 16, DEFAULT_HEIGHT = 12;
+
+	private Size size;
+	private Mat thumbnail;
+	private byte[] current, reference;
+	private boolean hasReference;
+
+	public FrameSignature() {
+		this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	public FrameSignature(int width, int height) {
+		this.size = new Size(width, height);
+		this.thumbnail = NativeMemory.newMat("FrameSignature");
+	}
+
+	/**
+	 * Computes the signature of {@code image} and returns its change score relative to the
+	 * reference, or {@link Double#POSITIVE_INFINITY} when there is no comparable reference.
+	 */
+	public double compare(Mat image) {
+		Imgproc.resize(image, thumbnail, size, 0, 0, Imgproc.INTER_AREA);
+		int length = (int) thumbnail.total() * thumbnail.channels();
+		if (current == null || current.length != length) {
+			current = new byte[length];
+		}
+		thumbnail.get(0, 0, current);
+
+		if (!hasReference || reference.length != length) {
+			return Double.POSITIVE_INFINITY;
+		}
+		int maxDifference = 0;
+		for (int i = 0; i < length; i++) {
+			int difference = Math.abs((current[i] & 0xff) - (reference[i] & 0xff));
+			if (difference > maxDifference) {
+				maxDifference = difference;
+			}
+		}
+		return maxDifference;
+	}
+
+	// makes the signature computed by the last compare() the new reference
+	public void accept() {
+		if (current == null) {
+			return;
+		}
+		if (reference == null || reference.length != current.length) {
+			reference = new byte[current.length];
+		}
+		System.arraycopy(current, 0, reference, 0, current.length);
+		hasReference = true;
+	}
+
+	public void reset() {
+		hasReference = false;
+	}
+
+	public void release() {
+		NativeMemory.release(thumbnail);
+	}
+
+}
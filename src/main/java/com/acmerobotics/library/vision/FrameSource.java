@@ -0,0 +1,14 @@
+package com.acmerobotics.library.vision;
+
+/**
+ * Something that produces camera frames, e.g. a camera callback or a video file reader. Once
+ * started it delivers frames with {@link BeaconPipeline#submit(org.opencv.core.Mat, long)};
+ * the pipeline copies each frame, so the source may reuse its buffer as soon as submit returns.
+ */
+public interface FrameSource {
+
+	void start(BeaconPipeline pipeline);
+
+	void stop();
+
+}
@@ -0,0 +1,28 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+
+/**
+ * One step of a {@link StagePipeline}. A stage transforms the pipeline's working image in
+ * place, reading whatever else it needs from the {@link StageContext}, and owns any scratch
+ * buffers it uses so they are reused from frame to frame.
+ */
+public interface ImageStage {
+
+	// also used as the intermediate name when the pipeline captures this stage's output
+	String getName();
+
+	// the aggregate stage this stage's time is reported under in PipelineStats
+	PipelineStats.Stage getStatsStage();
+
+	void apply(StageContext context, Mat image);
+
+	// scale of the working resolution relative to BeaconAnalyzer.REFERENCE_RESOLUTION
+	void setScale(double scale);
+
+	// a new stage with the same configuration but its own buffers, e.g. for another thread
+	ImageStage copy();
+
+	void release();
+
+}
@@ -0,0 +1,186 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.AnalysisIntermediates;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampled, asynchronous replacement for the {@link BeaconAnalyzer#DEBUG} intermediates. Only the
+ * selected intermediates of every Nth frame (or of frames requested with
+ * {@link #requestCapture()}) are copied into a fixed pool of Mats and handed to a background
+ * thread that passes them to a {@link Sink}. When the pool is exhausted the intermediate is
+ * dropped rather than blocking the analysis thread.
+ */
+public class IntermediateCapture implements AnalysisIntermediates {
+
+	public interface Sink {
+		void write(long frameNumber, String key, Mat image) throws IOException;
+	}
+
+	public static class PngSink implements Sink {
+		private File directory;
+
+		public PngSink(File directory) {
+			this.directory = directory;
+			directory.mkdirs();
+		}
+
+		@Override
+		public void write(long frameNumber, String key, Mat image) throws IOException {
+			File file = new File(directory, String.format("%06d_%s.png", frameNumber, key));
+			if (!Imgcodecs.imwrite(file.getPath(), image)) {
+				throw new IOException("unable to write " + file);
+			}
+		}
+	}
+
+	private static class Slot {
+		private final Mat image = NativeMemory.newMat("IntermediateCapture");
+		private String key;
+		private long frameNumber;
+	}
+
+	private final Sink sink;
+	private final Set<String> names;
+	private final BlockingQueue<Slot> free, pending;
+	private final AtomicLong captured, dropped, failed;
+	private volatile int sampleInterval;
+	private volatile boolean captureRequested, capturing;
+	private volatile long frameNumber;
+	private Thread writer;
+
+	public IntermediateCapture(Sink sink, int capacity, String... names) {
+		this.sink = sink;
+		this.names = new HashSet<String>(Arrays.asList(names));
+		this.free = new ArrayBlockingQueue<Slot>(capacity);
+		this.pending = new ArrayBlockingQueue<Slot>(capacity);
+		for (int i = 0; i < capacity; i++) {
+			free.add(new Slot());
+		}
+		this.captured = new AtomicLong();
+		this.dropped = new AtomicLong();
+		this.failed = new AtomicLong();
+	}
+
+	// 0 disables periodic capture; frames are then only captured on request
+	public void setSampleInterval(int sampleInterval) {
+		this.sampleInterval = sampleInterval;
+	}
+
+	public void requestCapture() {
+		captureRequested = true;
+	}
+
+	public synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "IntermediateCapture");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public synchronized void stop() {
+		if (writer == null) {
+			return;
+		}
+		writer.interrupt();
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
+
+	private void writeLoop() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Slot slot = pending.take();
+				try {
+					sink.write(slot.frameNumber, slot.key, slot.image);
+					captured.incrementAndGet();
+				} catch (IOException e) {
+					failed.incrementAndGet();
+				} finally {
+					free.offer(slot);
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	// called by the analyzer at the start of every frame
+	public void beginFrame() {
+		long frame = ++frameNumber;
+		int interval = sampleInterval;
+		capturing = captureRequested || (interval > 0 && frame % interval == 0);
+		captureRequested = false;
+	}
+
+	public boolean isCapturing() {
+		return capturing;
+	}
+
+	@Override
+	public boolean captures(String name) {
+		return capturing && (names.isEmpty() || names.contains(name));
+	}
+
+	@Override
+	public Mat put(String key, Mat mat) {
+		if (!capturing) {
+			return null;
+		}
+		Slot slot = free.poll();
+		if (slot == null) {
+			dropped.incrementAndGet();
+			return null;
+		}
+		mat.copyTo(slot.image);
+		slot.key = key;
+		slot.frameNumber = frameNumber;
+		pending.offer(slot);
+		return null;
+	}
+
+	public long getCapturedCount() {
+		return captured.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public void release() {
+		stop();
+		Slot slot;
+		while ((slot = pending.poll()) != null) {
+			free.offer(slot);
+		}
+		for (Slot freeSlot : free) {
+			NativeMemory.release(freeSlot.image);
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rectangular structuring elements built once per size, so switching between working
+ * resolutions doesn't allocate new kernels every frame.
+ */
+public class KernelCache {
+
+	private Map<Integer, Mat> kernels;
+
+	public KernelCache() {
+		this.kernels = new HashMap<Integer, Mat>();
+	}
+
+	// scales an odd kernel size, keeping it odd and at least 1
+	public static int scaleOddSize(int size, double scale) {
+		int scaled = (int) Math.round(size * scale);
+		if (scaled % 2 == 0) {
+			scaled++;
+		}
+		return Math.max(1, scaled);
+	}
+
+	public Mat get(int size) {
+		Mat kernel = kernels.get(size);
+		if (kernel == null) {
+			kernel = NativeMemory.track(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(size, size)), "KernelCache");
+			kernels.put(size, kernel);
+		}
+		return kernel;
+	}
+
+	public void release() {
+		for (Mat kernel : kernels.values()) {
+			NativeMemory.release(kernel);
+		}
+		kernels.clear();
+	}
+
+}
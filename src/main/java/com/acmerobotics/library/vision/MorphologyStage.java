@@ -0,0 +1,55 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * A single full-resolution morphological operation (e.g. {@link Imgproc#MORPH_OPEN}) with a
+ * square kernel.
+ */
+public class MorphologyStage implements ImageStage {
+
+	private String name;
+	private int operation, size;
+	private Mat kernel;
+	private KernelCache kernelCache;
+
+	public MorphologyStage(String name, int operation, int size) {
+		this.name = name;
+		this.operation = operation;
+		this.size = size;
+		this.kernelCache = new KernelCache();
+		setScale(1);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public PipelineStats.Stage getStatsStage() {
+		return PipelineStats.Stage.MORPHOLOGY;
+	}
+
+	@Override
+	public void apply(StageContext context, Mat image) {
+		Imgproc.morphologyEx(image, image, operation, kernel);
+	}
+
+	@Override
+	public void setScale(double scale) {
+		kernel = kernelCache.get(KernelCache.scaleOddSize(size, scale));
+	}
+
+	@Override
+	public ImageStage copy() {
+		return new MorphologyStage(name, operation, size);
+	}
+
+	@Override
+	public void release() {
+		kernelCache.release();
+	}
+
+}
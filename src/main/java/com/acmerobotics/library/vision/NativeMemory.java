@@ -0,0 +1,128 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accounting of the native Mats allocated by this library. Every Mat the vision classes create
+ * (buffers, kernels, contours and per-frame temporaries) is registered here with the name of
+ * its owner, so the live count and bytes can be watched for growth over a long session.
+ * <p>
+ * Tracking is off by default; enable it before creating the analyzers to be watched. A tracked
+ * Mat counts as live until it is released through {@link #release(Mat)}, and is held until then,
+ * so a Mat that is dropped without being released stays counted instead of silently leaving
+ * the count when it's collected. Bytes are read from the Mats' current sizes, so queries should
+ * be made between frames.
+ */
+public class NativeMemory {
+
+	public static class Usage {
+		public final int count;
+		public final long bytes;
+
+		public Usage(int count, long bytes) {
+			this.count = count;
+			this.bytes = bytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d mats, %.1f KB", count, bytes / 1024.0);
+		}
+	}
+
+	private static final Map<Mat, String> mats = new IdentityHashMap<Mat, String>();
+	private static volatile boolean enabled;
+
+	// disabling also forgets the Mats tracked so far
+	public static void setEnabled(boolean enabled) {
+		NativeMemory.enabled = enabled;
+		if (!enabled) {
+			synchronized (mats) {
+				mats.clear();
+			}
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static Mat newMat(String owner) {
+		return track(new Mat(), owner);
+	}
+
+	public static <T extends Mat> T track(T mat, String owner) {
+		if (enabled) {
+			synchronized (mats) {
+				mats.put(mat, owner);
+			}
+		}
+		return mat;
+	}
+
+	// releases the Mat's data and stops counting it
+	public static void release(Mat mat) {
+		mat.release();
+		if (enabled) {
+			synchronized (mats) {
+				mats.remove(mat);
+			}
+		}
+	}
+
+	private static List<Map.Entry<Mat, String>> entries() {
+		synchronized (mats) {
+			return new ArrayList<Map.Entry<Mat, String>>(mats.entrySet());
+		}
+	}
+
+	private static long bytesOf(Mat mat) {
+		// submats share their parent's data
+		return mat.isSubmatrix() ? 0 : mat.total() * mat.elemSize();
+	}
+
+	public static Usage getUsage() {
+		int count = 0;
+		long bytes = 0;
+		for (Map.Entry<Mat, String> entry : entries()) {
+			count++;
+			bytes += bytesOf(entry.getKey());
+		}
+		return new Usage(count, bytes);
+	}
+
+	public static int getLiveCount() {
+		return getUsage().count;
+	}
+
+	public static long getLiveBytes() {
+		return getUsage().bytes;
+	}
+
+	// live usage per owner, e.g. "ColorDetector" or "ColorDetector.contour"
+	public static Map<String, Usage> getUsageByOwner() {
+		Map<String, int[]> counts = new TreeMap<String, int[]>();
+		Map<String, long[]> bytes = new TreeMap<String, long[]>();
+		for (Map.Entry<Mat, String> entry : entries()) {
+			Mat mat = entry.getKey();
+			if (!counts.containsKey(entry.getValue())) {
+				counts.put(entry.getValue(), new int[1]);
+				bytes.put(entry.getValue(), new long[1]);
+			}
+			counts.get(entry.getValue())[0]++;
+			bytes.get(entry.getValue())[0] += bytesOf(mat);
+		}
+		Map<String, Usage> usage = new TreeMap<String, Usage>();
+		for (String owner : counts.keySet()) {
+			usage.put(owner, new Usage(counts.get(owner)[0], bytes.get(owner)[0]));
+		}
+		return usage;
+	}
+
+}
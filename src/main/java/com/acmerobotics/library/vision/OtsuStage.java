@@ -0,0 +1,42 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Inverted Otsu threshold of the clipped grayscale image, limited to the color mask, which
+ * leaves the dark buttons inside each region white.
+ */
+public class OtsuStage implements ImageStage {
+
+	@Override
+	public String getName() {
+		return "thresholded_regions";
+	}
+
+	@Override
+	public PipelineStats.Stage getStatsStage() {
+		return PipelineStats.Stage.OTSU;
+	}
+
+	@Override
+	public void apply(StageContext context, Mat image) {
+		Imgproc.threshold(image, image, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+		Core.bitwise_and(image, context.getColorMask(), image);
+	}
+
+	@Override
+	public void setScale(double scale) {
+	}
+
+	@Override
+	public ImageStage copy() {
+		return new OtsuStage();
+	}
+
+	@Override
+	public void release() {
+	}
+
+}
@@ -0,0 +1,175 @@
+package com.acmerobotics.library.vision;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage latency histograms and per-frame counters for the detection pipeline. Stages are
+ * timed with {@link #start()} and {@link #record(Stage, long)}; when the stats are disabled
+ * both reduce to a single field check. Recording is thread-safe so the per-color searches can
+ * report while running in parallel. Poll {@link #snapshot()} from telemetry.
+ */
+public class PipelineStats {
+
+	public enum Stage {
+		FRAME,
+		COLOR_CONVERT,
+		THRESHOLD,
+		MORPHOLOGY,
+		CONTOURS,
+		OTSU,
+		BUTTON_SEARCH,
+		PAIRING
+	}
+
+	public enum Counter {
+		CONTOURS,
+		REGIONS,
+		CANDIDATE_PAIRS,
+		BEACONS,
+		// frames answered with the previous results because the frame hadn't changed
+		REUSED_FRAMES
+	}
+
+	public static class StageSnapshot {
+		public final long count;
+		public final double meanMicros;
+		public final long p50Micros, p90Micros, p99Micros, maxMicros;
+
+		public StageSnapshot(LatencyHistogram histogram) {
+			this.count = histogram.getCount();
+			this.meanMicros = histogram.getMean();
+			this.p50Micros = histogram.getPercentile(50);
+			this.p90Micros = histogram.getPercentile(90);
+			this.p99Micros = histogram.getPercentile(99);
+			this.maxMicros = histogram.getMax();
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "n=%d mean=%.0fus p50=%dus p90=%dus p99=%dus max=%dus",
+					count, meanMicros, p50Micros, p90Micros, p99Micros, maxMicros);
+		}
+	}
+
+	public static class Snapshot {
+		public final long frames;
+		public final Map<Stage, StageSnapshot> stages;
+		public final Map<Counter, Long> lastFrame;
+		public final Map<Counter, Long> totals;
+
+		private Snapshot(long frames, Map<Stage, StageSnapshot> stages, Map<Counter, Long> lastFrame, Map<Counter, Long> totals) {
+			this.frames = frames;
+			this.stages = stages;
+			this.lastFrame = lastFrame;
+			this.totals = totals;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("frames=").append(frames).append('\n');
+			for (Map.Entry<Stage, StageSnapshot> entry : stages.entrySet()) {
+				builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+			}
+			for (Counter counter : Counter.values()) {
+				builder.append(counter).append(": last=").append(lastFrame.get(counter))
+						.append(" total=").append(totals.get(counter)).append('\n');
+			}
+			return builder.toString();
+		}
+	}
+
+	private volatile boolean enabled;
+	private final LatencyHistogram[] histograms;
+	private final AtomicLongArray currentFrame, lastFrame, totals;
+	private volatile long frames;
+
+	public PipelineStats() {
+		int numCounters = Counter.values().length;
+		this.histograms = new LatencyHistogram[Stage.values().length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+		this.currentFrame = new AtomicLongArray(numCounters);
+		this.lastFrame = new AtomicLongArray(numCounters);
+		this.totals = new AtomicLongArray(numCounters);
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	public void record(Stage stage, long startNanos) {
+		if (enabled && startNanos != 0) {
+			histograms[stage.ordinal()].record((System.nanoTime() - startNanos) / 1000);
+		}
+	}
+
+	public void count(Counter counter, long amount) {
+		if (enabled) {
+			currentFrame.addAndGet(counter.ordinal(), amount);
+		}
+	}
+
+	public void beginFrame() {
+		if (enabled) {
+			for (int i = 0; i < currentFrame.length(); i++) {
+				currentFrame.set(i, 0);
+			}
+		}
+	}
+
+	public void endFrame(long startNanos) {
+		if (enabled) {
+			record(Stage.FRAME, startNanos);
+			for (int i = 0; i < currentFrame.length(); i++) {
+				long value = currentFrame.get(i);
+				lastFrame.set(i, value);
+				totals.addAndGet(i, value);
+			}
+			frames++;
+		}
+	}
+
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	public Snapshot snapshot() {
+		Map<Stage, StageSnapshot> stages = new EnumMap<Stage, StageSnapshot>(Stage.class);
+		for (Stage stage : Stage.values()) {
+			stages.put(stage, new StageSnapshot(histograms[stage.ordinal()]));
+		}
+		Map<Counter, Long> last = new EnumMap<Counter, Long>(Counter.class);
+		Map<Counter, Long> total = new EnumMap<Counter, Long>(Counter.class);
+		for (Counter counter : Counter.values()) {
+			last.put(counter, lastFrame.get(counter.ordinal()));
+			total.put(counter, totals.get(counter.ordinal()));
+		}
+		return new Snapshot(frames, stages, last, total);
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+		for (int i = 0; i < totals.length(); i++) {
+			currentFrame.set(i, 0);
+			lastFrame.set(i, 0);
+			totals.set(i, 0);
+		}
+		frames = 0;
+	}
+
+}
@@ -0,0 +1,450 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Searches for the {@link ScalarRange}s that best separate red and blue beacon pixels from
+ * everything else in a set of labelled images (see {@link BeaconLabel}).
+ * <p>
+ * Each image is converted to HSV once at {@link BeaconAnalyzer#REFERENCE_RESOLUTION} and
+ * reduced to one quantized HSV histogram per class: red (the red halves of the labelled
+ * beacons), blue, and background (everything outside the labels). These histograms are
+ * cached on disk. The summed histograms are turned into 3D prefix sums, so the number of pixels
+ * of each class inside any candidate box is read with 8 lookups whatever the dataset size.
+ * <p>
+ * Candidates are a hue interval (wrapping around 180 so red can be a single interval), a
+ * minimum saturation and a minimum value; the maximum saturation and value are always 255.
+ * Every candidate is scored by the F-measure of its pixel classification and the hue
+ * intervals are searched in parallel.
+ */
+public class RangeTuner {
+
+	public static final int HUE_BINS = 45, SAT_BINS = 32, VAL_BINS = 32;
+	private static final int HUE_STEP = 180 / HUE_BINS, SAT_STEP = 256 / SAT_BINS, VAL_STEP = 256 / VAL_BINS;
+	private static final int NUM_BINS = HUE_BINS * SAT_BINS * VAL_BINS;
+
+	private static final int RED = 0, BLUE = 1, BACKGROUND = 2, NUM_CLASSES = 3;
+	private static final int CACHE_MAGIC = 0x48495354, CACHE_VERSION = 1;
+
+	public static class Result {
+		public final ScalarRange range;
+		public final double precision, recall, score;
+
+		public Result(ScalarRange range, double precision, double recall, double score) {
+			this.range = range;
+			this.precision = precision;
+			this.recall = recall;
+			this.score = score;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			List<Scalar> ranges = range.getRanges();
+			for (int i = 0; i < ranges.size(); i += 2) {
+				double[] lower = ranges.get(i).val, upper = ranges.get(i + 1).val;
+				sb.append(String.format("[%d, %d, %d] - [%d, %d, %d] ", (int) lower[0], (int) lower[1], (int) lower[2],
+						(int) upper[0], (int) upper[1], (int) upper[2]));
+			}
+			sb.append(String.format("precision=%.3f recall=%.3f score=%.3f", precision, recall, score));
+			return sb.toString();
+		}
+	}
+
+	private static class Candidate {
+		private int hueLow, hueHigh, satLow, valLow;
+		private double precision, recall, score = -1;
+	}
+
+	// histograms[class][(h * SAT_BINS + s) * VAL_BINS + v]
+	private long[][] histograms;
+	private long[][] prefixSums;
+	private File cacheDir;
+	private int threads;
+	private double beta;
+	private int images, cacheHits;
+
+	public RangeTuner() {
+		this.histograms = new long[NUM_CLASSES][NUM_BINS];
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.beta = 1;
+	}
+
+	// directory for the per-image histogram cache; null disables caching
+	public void setCacheDir(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	// weight of recall relative to precision in the F-measure
+	public void setBeta(double beta) {
+		this.beta = beta;
+	}
+
+	public int getImageCount() {
+		return images;
+	}
+
+	public int getCacheHits() {
+		return cacheHits;
+	}
+
+	public void addImages(final File imageDir, Map<String, List<BeaconLabel>> labels) {
+		// each image's histograms are summed as soon as they're ready so only a few are held at once
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		CompletionService<int[][]> completion = new ExecutorCompletionService<int[][]>(executor);
+		try {
+			for (final Map.Entry<String, List<BeaconLabel>> entry : labels.entrySet()) {
+				completion.submit(new Callable<int[][]>() {
+					@Override
+					public int[][] call() throws IOException {
+						return loadHistograms(new File(imageDir, entry.getKey()), entry.getValue());
+					}
+				});
+			}
+			for (int i = 0; i < labels.size(); i++) {
+				addHistograms(completion.take().get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while loading histograms", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("loading histograms failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// adds the histograms of one image, indexed like computeHistograms() returns them
+	void addHistograms(int[][] imageHistograms) {
+		for (int c = 0; c < NUM_CLASSES; c++) {
+			for (int i = 0; i < NUM_BINS; i++) {
+				histograms[c][i] += imageHistograms[c][i];
+			}
+		}
+		images++;
+		prefixSums = null;
+	}
+
+	private int[][] loadHistograms(File imageFile, List<BeaconLabel> labels) throws IOException {
+		File cacheFile = null;
+		if (cacheDir != null) {
+			StringBuilder key = new StringBuilder();
+			key.append(imageFile.length()).append(':').append(imageFile.lastModified());
+			for (BeaconLabel label : labels) {
+				key.append(':').append(label.getColors()).append(label.getBounds());
+			}
+			cacheFile = new File(cacheDir, String.format("%s_%08x.hist", imageFile.getName(), key.toString().hashCode()));
+			if (cacheFile.isFile()) {
+				int[][] cached = readCache(cacheFile);
+				if (cached != null) {
+					synchronized (this) {
+						cacheHits++;
+					}
+					return cached;
+				}
+			}
+		}
+
+		int[][] imageHistograms = computeHistograms(imageFile, labels);
+		if (cacheFile != null) {
+			cacheDir.mkdirs();
+			writeCache(cacheFile, imageHistograms);
+		}
+		return imageHistograms;
+	}
+
+	private static int[][] computeHistograms(File imageFile, List<BeaconLabel> labels) throws IOException {
+		Mat image = Imgcodecs.imread(imageFile.getPath());
+		if (image.empty()) {
+			throw new IOException("unable to read " + imageFile);
+		}
+		Size smallSize = BeaconAnalyzer.getSmallSize(image.size(), BeaconAnalyzer.REFERENCE_RESOLUTION);
+		double scale = smallSize.width / image.cols();
+		Mat hsv = NativeMemory.newMat("RangeTuner");
+		Imgproc.resize(image, hsv, smallSize);
+		Imgproc.cvtColor(hsv, hsv, Imgproc.COLOR_BGR2HSV);
+		NativeMemory.release(image);
+
+		int cols = hsv.cols(), rows = hsv.rows();
+		byte[] pixels = new byte[3 * cols * rows];
+		hsv.get(0, 0, pixels);
+		NativeMemory.release(hsv);
+
+		// label every pixel first so overlapping labels are only counted once
+		byte[] classes = new byte[cols * rows];
+		Arrays.fill(classes, (byte) BACKGROUND);
+		for (BeaconLabel label : labels) {
+			Rect bounds = label.getBounds();
+			int left = clamp((int) Math.round(bounds.x * scale), cols);
+			int top = clamp((int) Math.round(bounds.y * scale), rows);
+			int right = clamp((int) Math.round((bounds.x + bounds.width) * scale), cols);
+			int bottom = clamp((int) Math.round((bounds.y + bounds.height) * scale), rows);
+			int middle = (left + right) / 2;
+			fillClass(classes, cols, left, top, middle, bottom, classOf(label.getLeftColor()));
+			fillClass(classes, cols, middle, top, right, bottom, classOf(label.getRightColor()));
+		}
+
+		int[][] imageHistograms = new int[NUM_CLASSES][NUM_BINS];
+		for (int i = 0, j = 0; i < classes.length; i++, j += 3) {
+			int h = Math.min(HUE_BINS - 1, (pixels[j] & 0xff) / HUE_STEP);
+			int s = (pixels[j + 1] & 0xff) / SAT_STEP;
+			int v = (pixels[j + 2] & 0xff) / VAL_STEP;
+			imageHistograms[classes[i]][(h * SAT_BINS + s) * VAL_BINS + v]++;
+		}
+		return imageHistograms;
+	}
+
+	private static int clamp(int value, int max) {
+		return Math.max(0, Math.min(max, value));
+	}
+
+	private static int classOf(BeaconColor color) {
+		switch (color) {
+			case RED:
+				return RED;
+			case BLUE:
+				return BLUE;
+			default:
+				return BACKGROUND;
+		}
+	}
+
+	private static void fillClass(byte[] classes, int cols, int left, int top, int right, int bottom, int c) {
+		for (int y = top; y < bottom; y++) {
+			Arrays.fill(classes, y * cols + left, y * cols + right, (byte) c);
+		}
+	}
+
+	private static int[][] readCache(File file) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			try {
+				if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION || in.readInt() != HUE_BINS
+						|| in.readInt() != SAT_BINS || in.readInt() != VAL_BINS) {
+					return null;
+				}
+				int[][] cached = new int[NUM_CLASSES][NUM_BINS];
+				for (int c = 0; c < NUM_CLASSES; c++) {
+					for (int i = 0; i < NUM_BINS; i++) {
+						cached[c][i] = in.readInt();
+					}
+				}
+				return cached;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// a corrupt or truncated cache entry is simply recomputed
+			return null;
+		}
+	}
+
+	private static void writeCache(File file, int[][] imageHistograms) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+		try {
+			out.writeInt(CACHE_MAGIC);
+			out.writeInt(CACHE_VERSION);
+			out.writeInt(HUE_BINS);
+			out.writeInt(SAT_BINS);
+			out.writeInt(VAL_BINS);
+			for (int c = 0; c < NUM_CLASSES; c++) {
+				for (int i = 0; i < NUM_BINS; i++) {
+					out.writeInt(imageHistograms[c][i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+		}
+	}
+
+	private void buildPrefixSums() {
+		if (prefixSums != null) {
+			return;
+		}
+		int hs = HUE_BINS + 1, ss = SAT_BINS + 1, vs = VAL_BINS + 1;
+		prefixSums = new long[NUM_CLASSES][hs * ss * vs];
+		for (int c = 0; c < NUM_CLASSES; c++) {
+			long[] p = prefixSums[c];
+			long[] hist = histograms[c];
+			for (int h = 1; h < hs; h++) {
+				for (int s = 1; s < ss; s++) {
+					for (int v = 1; v < vs; v++) {
+						p[(h * ss + s) * vs + v] = hist[((h - 1) * SAT_BINS + s - 1) * VAL_BINS + v - 1]
+								+ p[((h - 1) * ss + s) * vs + v] + p[(h * ss + s - 1) * vs + v] + p[(h * ss + s) * vs + v - 1]
+								- p[((h - 1) * ss + s - 1) * vs + v] - p[((h - 1) * ss + s) * vs + v - 1] - p[(h * ss + s - 1) * vs + v - 1]
+								+ p[((h - 1) * ss + s - 1) * vs + v - 1];
+					}
+				}
+			}
+		}
+	}
+
+	// pixels of class c in hue bins [h0, h1), saturation bins [s0, SAT_BINS) and value bins [v0, VAL_BINS)
+	private long boxSum(int c, int h0, int h1, int s0, int v0) {
+		buildPrefixSums();
+		int ss = SAT_BINS + 1, vs = VAL_BINS + 1;
+		int s1 = SAT_BINS, v1 = VAL_BINS;
+		long[] p = prefixSums[c];
+		return p[(h1 * ss + s1) * vs + v1] - p[(h0 * ss + s1) * vs + v1] - p[(h1 * ss + s0) * vs + v1] - p[(h1 * ss + s1) * vs + v0]
+				+ p[(h0 * ss + s0) * vs + v1] + p[(h0 * ss + s1) * vs + v0] + p[(h1 * ss + s0) * vs + v0] - p[(h0 * ss + s0) * vs + v0];
+	}
+
+	// hueLow > hueHigh means the interval wraps around from HUE_BINS - 1 to 0
+	long count(int c, int hueLow, int hueHigh, int s0, int v0) {
+		if (hueLow <= hueHigh) {
+			return boxSum(c, hueLow, hueHigh + 1, s0, v0);
+		}
+		return boxSum(c, hueLow, HUE_BINS, s0, v0) + boxSum(c, 0, hueHigh + 1, s0, v0);
+	}
+
+	private Candidate searchHue(int target, int hueLow) {
+		Candidate best = new Candidate();
+		long positives = boxSum(target, 0, HUE_BINS, 0, 0);
+		double beta2 = beta * beta;
+		for (int span = 0; span < HUE_BINS; span++) {
+			int hueHigh = (hueLow + span) % HUE_BINS;
+			for (int s0 = 0; s0 < SAT_BINS; s0++) {
+				for (int v0 = 0; v0 < VAL_BINS; v0++) {
+					long tp = count(target, hueLow, hueHigh, s0, v0);
+					if (tp == 0) {
+						break;
+					}
+					long selected = 0;
+					for (int c = 0; c < NUM_CLASSES; c++) {
+						selected += count(c, hueLow, hueHigh, s0, v0);
+					}
+					double precision = (double) tp / selected;
+					double recall = (double) tp / positives;
+					double score = (1 + beta2) * precision * recall / (beta2 * precision + recall);
+					if (score > best.score) {
+						best.hueLow = hueLow;
+						best.hueHigh = hueHigh;
+						best.satLow = s0;
+						best.valLow = v0;
+						best.precision = precision;
+						best.recall = recall;
+						best.score = score;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	public Result tune(BeaconColor color) {
+		final int target = classOf(color);
+		if (target == BACKGROUND) {
+			throw new IllegalArgumentException("can only tune red and blue, not " + color);
+		}
+		buildPrefixSums();
+		if (boxSum(target, 0, HUE_BINS, 0, 0) == 0) {
+			throw new IllegalStateException("no labelled " + color + " pixels");
+		}
+
+		List<Callable<Candidate>> tasks = new ArrayList<Callable<Candidate>>();
+		for (int h = 0; h < HUE_BINS; h++) {
+			final int hueLow = h;
+			tasks.add(new Callable<Candidate>() {
+				@Override
+				public Candidate call() {
+					return searchHue(target, hueLow);
+				}
+			});
+		}
+
+		Candidate best = null;
+		for (Candidate candidate : runAll(tasks)) {
+			if (best == null || candidate.score > best.score) {
+				best = candidate;
+			}
+		}
+
+		ScalarRange range = new ScalarRange();
+		double satLow = best.satLow * SAT_STEP, valLow = best.valLow * VAL_STEP;
+		if (best.hueLow <= best.hueHigh) {
+			range.add(new Scalar(best.hueLow * HUE_STEP, satLow, valLow), new Scalar(best.hueHigh * HUE_STEP + HUE_STEP - 1, 255, 255));
+		} else {
+			range.add(new Scalar(best.hueLow * HUE_STEP, satLow, valLow), new Scalar(180, 255, 255));
+			range.add(new Scalar(0, satLow, valLow), new Scalar(best.hueHigh * HUE_STEP + HUE_STEP - 1, 255, 255));
+		}
+		return new Result(range, best.precision, best.recall, best.score);
+	}
+
+	private <T> List<T> runAll(List<Callable<T>> tasks) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<T> values = new ArrayList<T>();
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				values.add(future.get());
+			}
+			return values;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while tuning ranges", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("range tuning failed", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: RangeTuner <image dir> [label file] [cache dir]");
+			System.exit(1);
+		}
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+		File imageDir = new File(args[0]);
+		File labelFile = args.length > 1 ? new File(args[1]) : new File(imageDir, "labels.txt");
+
+		RangeTuner tuner = new RangeTuner();
+		tuner.setCacheDir(args.length > 2 ? new File(args[2]) : new File(imageDir, ".hist"));
+		long start = System.nanoTime();
+		tuner.addImages(imageDir, BeaconLabel.read(labelFile));
+		long loaded = System.nanoTime();
+		System.out.println("red:  " + tuner.tune(BeaconColor.RED));
+		System.out.println("blue: " + tuner.tune(BeaconColor.BLUE));
+		System.out.printf("%d images (%d cached) in %.2f s, search in %.2f s%n", tuner.getImageCount(), tuner.getCacheHits(),
+				(loaded - start) / 1e9, (System.nanoTime() - loaded) / 1e9);
+	}
+
+}
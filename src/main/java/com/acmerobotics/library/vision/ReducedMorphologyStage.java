@@ -0,0 +1,70 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Morphologically opens and then closes the mask at a fraction of the working resolution,
+ * which is much cheaper than full-resolution morphology with proportionally larger kernels.
+ */
+public class ReducedMorphologyStage implements ImageStage {
+
+	private int factor, openSize, closeSize;
+	private Mat small, openKernel, closeKernel;
+	private KernelCache kernelCache;
+	private Size originalSize, smallSize;
+
+	public ReducedMorphologyStage(int factor, int openSize, int closeSize) {
+		this.factor = factor;
+		this.openSize = openSize;
+		this.closeSize = closeSize;
+		this.small = NativeMemory.newMat("ReducedMorphologyStage");
+		this.kernelCache = new KernelCache();
+		this.originalSize = new Size();
+		this.smallSize = new Size();
+		setScale(1);
+	}
+
+	@Override
+	public String getName() {
+		return "detector_mask";
+	}
+
+	@Override
+	public PipelineStats.Stage getStatsStage() {
+		return PipelineStats.Stage.MORPHOLOGY;
+	}
+
+	@Override
+	public void apply(StageContext context, Mat image) {
+		originalSize.width = image.cols();
+		originalSize.height = image.rows();
+		smallSize.width = originalSize.width / factor;
+		smallSize.height = originalSize.height / factor;
+		Imgproc.resize(image, small, smallSize);
+
+		Imgproc.morphologyEx(small, small, Imgproc.MORPH_OPEN, openKernel);
+		Imgproc.morphologyEx(small, small, Imgproc.MORPH_CLOSE, closeKernel);
+
+		Imgproc.resize(small, image, originalSize);
+	}
+
+	@Override
+	public void setScale(double scale) {
+		openKernel = kernelCache.get(KernelCache.scaleOddSize(openSize, scale));
+		closeKernel = kernelCache.get(KernelCache.scaleOddSize(closeSize, scale));
+	}
+
+	@Override
+	public ImageStage copy() {
+		return new ReducedMorphologyStage(factor, openSize, closeSize);
+	}
+
+	@Override
+	public void release() {
+		NativeMemory.release(small);
+		kernelCache.release();
+	}
+
+}
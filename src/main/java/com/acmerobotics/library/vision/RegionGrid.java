@@ -0,0 +1,147 @@
+package com.acmerobotics.library.vision;
+
+import java.util.List;
+
+/**
+ * Uniform grid over the bounding rects of a set of beacon regions, used to test each
+ * button only against the regions whose bounds overlap the button's cell. The grid and the
+ * region rects (a {@link RegionTable}) are stored as flat arrays that are reused between
+ * frames.
+ */
+public class RegionGrid {
+
+	public static final int DEFAULT_CELL_SIZE = 32;
+
+	private int cellSize;
+	private int minX, minY, cols, rows;
+	private int[] cellStart, cellItems, cellFill;
+	private RegionTable table;
+
+	public RegionGrid() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public RegionGrid(int cellSize) {
+		this.cellSize = cellSize;
+		this.cellStart = new int[1];
+		this.cellItems = new int[0];
+		this.cellFill = new int[0];
+		this.table = new RegionTable();
+	}
+
+	public void build(List<BeaconRegion> regions) {
+		table.build(regions);
+
+		int numRegions = table.size();
+		if (numRegions == 0) {
+			cols = 0;
+			rows = 0;
+			return;
+		}
+
+		minX = Integer.MAX_VALUE;
+		minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < numRegions; i++) {
+			minX = Math.min(minX, table.getRectX(i));
+			minY = Math.min(minY, table.getRectY(i));
+			maxX = Math.max(maxX, table.getRectRight(i));
+			maxY = Math.max(maxY, table.getRectBottom(i));
+		}
+		cols = (maxX - minX) / cellSize + 1;
+		rows = (maxY - minY) / cellSize + 1;
+
+		int numCells = cols * rows;
+		if (cellStart.length < numCells + 1) {
+			cellStart = new int[numCells + 1];
+			cellFill = new int[numCells];
+		}
+		for (int i = 0; i <= numCells; i++) {
+			cellStart[i] = 0;
+		}
+
+		// count the regions overlapping each cell, then lay the cells out contiguously
+		for (int i = 0; i < numRegions; i++) {
+			for (int row = rowOf(table.getRectY(i)); row <= rowOf(table.getRectBottom(i) - 1); row++) {
+				for (int col = colOf(table.getRectX(i)); col <= colOf(table.getRectRight(i) - 1); col++) {
+					cellStart[row * cols + col + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < numCells; i++) {
+			cellStart[i + 1] += cellStart[i];
+			cellFill[i] = cellStart[i];
+		}
+		if (cellItems.length < cellStart[numCells]) {
+			cellItems = new int[cellStart[numCells]];
+		}
+		for (int i = 0; i < numRegions; i++) {
+			for (int row = rowOf(table.getRectY(i)); row <= rowOf(table.getRectBottom(i) - 1); row++) {
+				for (int col = colOf(table.getRectX(i)); col <= colOf(table.getRectRight(i) - 1); col++) {
+					cellItems[cellFill[row * cols + col]++] = i;
+				}
+			}
+		}
+	}
+
+	private int colOf(int x) {
+		return Math.max(0, Math.min(cols - 1, (x - minX) / cellSize));
+	}
+
+	private int rowOf(int y) {
+		return Math.max(0, Math.min(rows - 1, (y - minY) / cellSize));
+	}
+
+	// index of the grid cell containing the point or -1 if it lies outside the grid
+	private int cellOf(double x, double y) {
+		if (cols == 0 || x < minX || y < minY) {
+			return -1;
+		}
+		int col = (int) ((x - minX) / cellSize);
+		int row = (int) ((y - minY) / cellSize);
+		if (col >= cols || row >= rows) {
+			return -1;
+		}
+		return row * cols + col;
+	}
+
+	public void assignButton(Circle button) {
+		double x = button.pt.x, y = button.pt.y;
+		int cell = cellOf(x, y);
+		if (cell < 0) {
+			return;
+		}
+		for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+			if (table.contains(cellItems[i], x, y)) {
+				table.getRegion(cellItems[i]).addButton(button);
+			}
+		}
+	}
+
+	public void assignButtons(List<Circle> buttons) {
+		for (Circle button : buttons) {
+			assignButton(button);
+		}
+	}
+
+	// Circle objects are only created for buttons that land in at least one region
+	public void assignButtons(CircleBuffer buttons) {
+		for (int b = 0; b < buttons.size(); b++) {
+			double x = buttons.getX(b), y = buttons.getY(b);
+			int cell = cellOf(x, y);
+			if (cell < 0) {
+				continue;
+			}
+			Circle button = null;
+			for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+				if (table.contains(cellItems[i], x, y)) {
+					if (button == null) {
+						button = buttons.toCircle(b);
+					}
+					table.getRegion(cellItems[i]).addButton(button);
+				}
+			}
+		}
+	}
+
+}
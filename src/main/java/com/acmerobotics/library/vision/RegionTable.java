@@ -0,0 +1,91 @@
+package com.acmerobotics.library.vision;
+
+import java.util.List;
+
+/**
+ * Struct-of-arrays copy of the geometry of a list of {@link BeaconRegion}s for the loops that
+ * visit every region per button or per pair. Arrays are reused between frames.
+ */
+public class RegionTable {
+
+	private int[] rectX, rectY, rectRight, rectBottom;
+	private double[] centroidX, centroidY, area;
+	private List<BeaconRegion> regions;
+	private int size;
+
+	public RegionTable() {
+		allocate(16);
+	}
+
+	private void allocate(int capacity) {
+		rectX = new int[capacity];
+		rectY = new int[capacity];
+		rectRight = new int[capacity];
+		rectBottom = new int[capacity];
+		centroidX = new double[capacity];
+		centroidY = new double[capacity];
+		area = new double[capacity];
+	}
+
+	public void build(List<BeaconRegion> regions) {
+		this.regions = regions;
+		size = regions.size();
+		if (size > rectX.length) {
+			allocate(Math.max(size, 2 * rectX.length));
+		}
+		for (int i = 0; i < size; i++) {
+			BeaconRegion region = regions.get(i);
+			rectX[i] = region.getRectX();
+			rectY[i] = region.getRectY();
+			rectRight[i] = region.getRectX() + region.getRectWidth();
+			rectBottom[i] = region.getRectY() + region.getRectHeight();
+			centroidX[i] = region.getCentroidX();
+			centroidY[i] = region.getCentroidY();
+			area[i] = region.area();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public BeaconRegion getRegion(int i) {
+		return regions.get(i);
+	}
+
+	public int getRectX(int i) {
+		return rectX[i];
+	}
+
+	public int getRectY(int i) {
+		return rectY[i];
+	}
+
+	// exclusive
+	public int getRectRight(int i) {
+		return rectRight[i];
+	}
+
+	// exclusive
+	public int getRectBottom(int i) {
+		return rectBottom[i];
+	}
+
+	public double getCentroidX(int i) {
+		return centroidX[i];
+	}
+
+	public double getCentroidY(int i) {
+		return centroidY[i];
+	}
+
+	public double getArea(int i) {
+		return area[i];
+	}
+
+	// same semantics as BeaconRegion.boundingRectContains()
+	public boolean contains(int i, double x, double y) {
+		return rectX[i] <= x && x < rectRight[i] && rectY[i] <= y && y < rectBottom[i];
+	}
+
+}
@@ -54,13 +54,24 @@ public class ScalarRange {
 	}
 	
 	public Mat inRange(Mat src) {
-		Mat dest = Mat.zeros(src.size(), CvType.CV_8U);
-		Mat mask = new Mat();
-		for (int i = 0; i < ranges.size(); i += 2) {
-			Core.inRange(src, ranges.get(i), ranges.get(i + 1), mask);
-			Core.bitwise_or(dest, mask, dest);
-		}
+		Mat dest = NativeMemory.newMat("ScalarRange");
+		Mat mask = NativeMemory.newMat("ScalarRange");
+		inRange(src, dest, mask);
+		NativeMemory.release(mask);
 		return dest;
 	}
+
+	public void inRange(Mat src, Mat dest, Mat temp) {
+		if (ranges.size() == 0) {
+			dest.create(src.rows(), src.cols(), CvType.CV_8U);
+			dest.setTo(new Scalar(0));
+			return;
+		}
+		Core.inRange(src, ranges.get(0), ranges.get(1), dest);
+		for (int i = 2; i < ranges.size(); i += 2) {
+			Core.inRange(src, ranges.get(i), ranges.get(i + 1), temp);
+			Core.bitwise_or(dest, temp, dest);
+		}
+	}
 	
 }
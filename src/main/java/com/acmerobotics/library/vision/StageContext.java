@@ -0,0 +1,39 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+
+/**
+ * Inputs shared by the stages of a {@link StagePipeline} for one color and one frame.
+ */
+public class StageContext {
+
+	private FrameContext frame;
+	private ScalarRange range;
+	private int classLabel;
+	private Mat colorMask;
+
+	public void set(FrameContext frame, ScalarRange range, int classLabel, Mat colorMask) {
+		this.frame = frame;
+		this.range = range;
+		this.classLabel = classLabel;
+		this.colorMask = colorMask;
+	}
+
+	public FrameContext getFrame() {
+		return frame;
+	}
+
+	public ScalarRange getRange() {
+		return range;
+	}
+
+	public int getClassLabel() {
+		return classLabel;
+	}
+
+	// the cleaned-up color mask; only set for stages that run after color detection
+	public Mat getColorMask() {
+		return colorMask;
+	}
+
+}
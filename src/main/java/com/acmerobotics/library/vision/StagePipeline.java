@@ -0,0 +1,134 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.AnalysisIntermediates;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of {@link ImageStage}s applied in place to one working image. When stats
+ * are enabled each stage's time is recorded in its own histogram (see {@link #getCost(int)});
+ * consecutive stages reporting the same {@link PipelineStats.Stage} are recorded there as one
+ * sample so the aggregate histograms stay comparable however the work is split.
+ */
+public class StagePipeline {
+
+	public static class Builder {
+		private List<ImageStage> stages = new ArrayList<ImageStage>();
+
+		public Builder add(ImageStage stage) {
+			stages.add(stage);
+			return this;
+		}
+
+		public Builder threshold() {
+			return add(new ThresholdStage());
+		}
+
+		public Builder reducedMorphology(int factor, int openSize, int closeSize) {
+			return add(new ReducedMorphologyStage(factor, openSize, closeSize));
+		}
+
+		public Builder morphology(String name, int operation, int size) {
+			return add(new MorphologyStage(name, operation, size));
+		}
+
+		public Builder fusedThresholdMorphology(int factor, int openSize, int closeSize) {
+			return add(new FusedThresholdMorphologyStage(factor, openSize, closeSize));
+		}
+
+		public Builder clip() {
+			return add(new ClipStage());
+		}
+
+		public Builder otsu() {
+			return add(new OtsuStage());
+		}
+
+		public StagePipeline build() {
+			return new StagePipeline(stages);
+		}
+	}
+
+	// threshold, downscale 4x, open 3x3, close 11x11, upscale
+	public static StagePipeline createMaskPipeline() {
+		return new Builder().threshold().reducedMorphology(4, 3, 11).build();
+	}
+
+	// clip the gray frame to the color mask, then Otsu
+	public static StagePipeline createButtonInputPipeline() {
+		return new Builder().clip().otsu().build();
+	}
+
+	private List<ImageStage> stages;
+	private LatencyHistogram[] costs;
+	private PipelineStats stats;
+
+	public StagePipeline(List<ImageStage> stages) {
+		this.stages = new ArrayList<ImageStage>(stages);
+		this.costs = new LatencyHistogram[stages.size()];
+		for (int i = 0; i < costs.length; i++) {
+			costs[i] = new LatencyHistogram();
+		}
+		this.stats = new PipelineStats();
+	}
+
+	public void setStats(PipelineStats stats) {
+		this.stats = stats;
+	}
+
+	public void setScale(double scale) {
+		for (ImageStage stage : stages) {
+			stage.setScale(scale);
+		}
+	}
+
+	public void apply(StageContext context, Mat image, AnalysisIntermediates intermediates, String debugTag) {
+		long groupStart = stats.start();
+		for (int i = 0; i < stages.size(); i++) {
+			ImageStage stage = stages.get(i);
+			long start = stats.start();
+			stage.apply(context, image);
+			if (start != 0) {
+				costs[i].record((System.nanoTime() - start) / 1000);
+				if (i == stages.size() - 1 || stages.get(i + 1).getStatsStage() != stage.getStatsStage()) {
+					stats.record(stage.getStatsStage(), groupStart);
+					groupStart = stats.start();
+				}
+			}
+
+			if (intermediates != null && intermediates.captures(stage.getName())) {
+				intermediates.put(stage.getName() + "_" + debugTag, image);
+			}
+		}
+	}
+
+	// a pipeline with copies of the same stages, e.g. for processing tiles in parallel
+	public StagePipeline copy() {
+		List<ImageStage> copies = new ArrayList<ImageStage>();
+		for (ImageStage stage : stages) {
+			copies.add(stage.copy());
+		}
+		StagePipeline pipeline = new StagePipeline(copies);
+		pipeline.setStats(stats);
+		return pipeline;
+	}
+
+	public List<ImageStage> getStages() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	public LatencyHistogram getCost(int stageIndex) {
+		return costs[stageIndex];
+	}
+
+	public void release() {
+		for (ImageStage stage : stages) {
+			stage.release();
+		}
+	}
+
+}
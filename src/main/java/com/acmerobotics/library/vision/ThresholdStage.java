@@ -0,0 +1,51 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Mat;
+
+/**
+ * Produces the raw color mask, either from the frame's {@link ColorClassifier} labels or by
+ * running the context's {@link ScalarRange} over the HSV image.
+ */
+public class ThresholdStage implements ImageStage {
+
+	private Mat temp;
+
+	public ThresholdStage() {
+		this.temp = NativeMemory.newMat("ThresholdStage");
+	}
+
+	@Override
+	public String getName() {
+		return "detector_mask_raw";
+	}
+
+	@Override
+	public PipelineStats.Stage getStatsStage() {
+		return PipelineStats.Stage.THRESHOLD;
+	}
+
+	@Override
+	public void apply(StageContext context, Mat image) {
+		FrameContext frame = context.getFrame();
+		if (context.getClassLabel() > 0 && frame.getClassifier() != null) {
+			frame.getClassifier().getMask(frame.getLabels(), context.getClassLabel(), image);
+		} else {
+			context.getRange().inRange(frame.getHsv(), image, temp);
+		}
+	}
+
+	@Override
+	public void setScale(double scale) {
+	}
+
+	@Override
+	public ImageStage copy() {
+		return new ThresholdStage();
+	}
+
+	@Override
+	public void release() {
+		NativeMemory.release(temp);
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a frame into a grid of roughly square tiles of at most {@code tileSize} pixels per
+ * side. Each tile has a core (the tiles' cores partition the frame) and is grown by
+ * {@code overlap} pixels on every side so that neighborhood operations such as morphology
+ * see the same pixels near a seam as they would on the whole frame.
+ */
+public class TileGrid {
+
+	// enough to cover the reduced-resolution open and close kernels at 640 px
+	public static final int DEFAULT_OVERLAP = 32;
+
+	private int tileSize, overlap, scaledOverlap;
+	private int width, height;
+	private List<Rect> cores, tiles;
+
+	public TileGrid(int tileSize) {
+		this(tileSize, DEFAULT_OVERLAP);
+	}
+
+	// overlap is in pixels at BeaconAnalyzer.REFERENCE_RESOLUTION and scaled by setScale()
+	public TileGrid(int tileSize, int overlap) {
+		this.tileSize = tileSize;
+		this.overlap = overlap;
+		this.scaledOverlap = overlap;
+		this.cores = new ArrayList<Rect>();
+		this.tiles = new ArrayList<Rect>();
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	public void setScale(double scale) {
+		int newOverlap = (int) Math.ceil(overlap * scale);
+		if (newOverlap != scaledOverlap) {
+			scaledOverlap = newOverlap;
+			width = 0;
+		}
+	}
+
+	public int getOverlap() {
+		return scaledOverlap;
+	}
+
+	// recomputes the tiles when the frame size changes
+	public void layout(int frameWidth, int frameHeight) {
+		if (frameWidth == width && frameHeight == height) {
+			return;
+		}
+		width = frameWidth;
+		height = frameHeight;
+		cores.clear();
+		tiles.clear();
+
+		int cols = Math.max(1, (frameWidth + tileSize - 1) / tileSize);
+		int rows = Math.max(1, (frameHeight + tileSize - 1) / tileSize);
+		for (int row = 0; row < rows; row++) {
+			int top = row * frameHeight / rows, bottom = (row + 1) * frameHeight / rows;
+			for (int col = 0; col < cols; col++) {
+				int left = col * frameWidth / cols, right = (col + 1) * frameWidth / cols;
+				cores.add(new Rect(left, top, right - left, bottom - top));
+
+				int tileLeft = Math.max(0, left - scaledOverlap), tileTop = Math.max(0, top - scaledOverlap);
+				int tileRight = Math.min(frameWidth, right + scaledOverlap), tileBottom = Math.min(frameHeight, bottom + scaledOverlap);
+				tiles.add(new Rect(tileLeft, tileTop, tileRight - tileLeft, tileBottom - tileTop));
+			}
+		}
+	}
+
+	public int size() {
+		return cores.size();
+	}
+
+	public Rect getCore(int i) {
+		return cores.get(i);
+	}
+
+	public Rect getTile(int i) {
+		return tiles.get(i);
+	}
+
+}
@@ -14,11 +14,16 @@ import org.opencv.imgproc.Imgproc;
 public class Util {
 	
 	public static Mat expandChannels(Mat src, int numChannels) {
-		Mat dest = new Mat(src.size(), CvType.CV_8UC(numChannels));
+		Mat dest = NativeMemory.newMat("Util");
+		expandChannels(src, numChannels, dest);
+		return dest;
+	}
+
+	public static void expandChannels(Mat src, int numChannels, Mat dest) {
+		dest.create(src.rows(), src.cols(), CvType.CV_8UC(numChannels));
 		for (int i = 0; i < numChannels; i++) {
 			Core.insertChannel(src, dest, i);
 		}
-		return dest;
 	}
 	
 	public static Rect combineRects(Rect rect1, Rect rect2) {
@@ -46,7 +51,7 @@ public class Util {
 	}
 
 	public static RotatedRect combineRotatedRects(RotatedRect...rects) {
-		MatOfPoint2f points = new MatOfPoint2f();
+		MatOfPoint2f points = NativeMemory.track(new MatOfPoint2f(), "Util");
 		Point[] arr = new Point[4 * rects.length];
 		Point[] temp = new Point[4];
 		for (int i = 0; i < rects.length; i++) {
@@ -54,14 +59,16 @@ public class Util {
 			System.arraycopy(temp, 0, arr, 4 * i, 4);
 		}
 		points.fromArray(arr);
-		return Imgproc.minAreaRect(points);
+		RotatedRect bounds = Imgproc.minAreaRect(points);
+		NativeMemory.release(points);
+		return bounds;
 	}
 
 	public static RotatedRect fitRotatedRect(MatOfPoint points) {
-		MatOfPoint2f pointsf = new MatOfPoint2f();
+		MatOfPoint2f pointsf = NativeMemory.track(new MatOfPoint2f(), "Util");
 		points.convertTo(pointsf, CvType.CV_32FC2);
 		RotatedRect bounds = Imgproc.minAreaRect(pointsf);
-		pointsf.release();
+		NativeMemory.release(pointsf);
 		return bounds;
 	}
 
@@ -0,0 +1,145 @@
+package com.acmerobotics.library.vision;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BeaconPairFilterTest {
+
+	@Test
+	public void maxScoreIsReachedWithPerfectGeometry() {
+		for (int left = 0; left <= 4; left++) {
+			for (int right = -1; right <= 4; right++) {
+				Beacon.Score best = new Beacon.Score(0, 0, left, right);
+				assertEquals(left + "/" + right, best.getNumericScore(), Beacon.getMaxScore(left, right));
+			}
+		}
+	}
+
+	@Test
+	public void maxScoreBoundsEveryScore() {
+		double[] errors = {0, 0.049, 0.05, 1};
+		for (int left = 0; left <= 4; left++) {
+			for (int right = -1; right <= 4; right++) {
+				for (double ratioError : errors) {
+					for (double areaError : errors) {
+						Beacon.Score score = new Beacon.Score(ratioError, areaError, left, right);
+						assertTrue(score.getNumericScore() <= Beacon.getMaxScore(left, right));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void maxScoreIsSymmetric() {
+		for (int left = 0; left <= 4; left++) {
+			for (int right = 0; right <= 4; right++) {
+				assertEquals(Beacon.getMaxScore(left, right), Beacon.getMaxScore(right, left));
+			}
+		}
+	}
+
+	@Test
+	public void maxDistanceGrowsWithRadius() {
+		assertTrue(BeaconPairFilter.getMaxDistance(10, 20) < BeaconPairFilter.getMaxDistance(20, 20));
+		assertTrue(BeaconPairFilter.getMaxDistance(20, 10) < BeaconPairFilter.getMaxDistance(20, 20));
+		assertEquals(BeaconPairFilter.getMaxDistance(10, 20), BeaconPairFilter.getMaxDistance(20, 10), 0);
+	}
+
+	@Test
+	public void pairsBeyondMaxDistanceCantScoreAspectRatio() {
+		Random random = new Random(7);
+		for (int trial = 0; trial < 20000; trial++) {
+			double w1 = 1 + 99 * random.nextDouble(), h1 = 1 + 99 * random.nextDouble();
+			double w2 = w1 * (0.2 + 4.8 * random.nextDouble()), h2 = h1 * (0.2 + 4.8 * random.nextDouble());
+			double maxDistance = BeaconPairFilter.getMaxDistance(Math.hypot(w1, h1) / 2, Math.hypot(w2, h2) / 2);
+			double distance = 1.5 * maxDistance * random.nextDouble();
+			double direction = 2 * Math.PI * random.nextDouble();
+
+			List<double[]> points = new ArrayList<double[]>();
+			addCorners(points, 0, 0, w1, h1, Math.PI * random.nextDouble());
+			addCorners(points, distance * Math.cos(direction), distance * Math.sin(direction), w2, h2, Math.PI * random.nextDouble());
+			double[] size = minAreaRectSize(points);
+
+			double ratio = Math.max(size[0], size[1]) / Math.min(size[0], size[1]);
+			double ratioError = Math.min(Math.pow(ratio - Beacon.PARTIAL_BEACON_WH_RATIO, 2), Math.pow(ratio - Beacon.FULL_BEACON_WH_RATIO, 2));
+			if (ratioError < Beacon.MAX_RATIO_ERROR) {
+				assertTrue(distance + " > " + maxDistance, distance <= maxDistance);
+			}
+		}
+	}
+
+	private static void addCorners(List<double[]> points, double x, double y, double width, double height, double angle) {
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		for (int i = 0; i < 4; i++) {
+			double dx = (i == 0 || i == 3 ? 0.5 : -0.5) * width;
+			double dy = (i < 2 ? 0.5 : -0.5) * height;
+			points.add(new double[] {x + dx * cos - dy * sin, y + dx * sin + dy * cos});
+		}
+	}
+
+	// the minimum area rect has a side on an edge of the convex hull
+	private static double[] minAreaRectSize(List<double[]> points) {
+		List<double[]> hull = convexHull(points);
+		double bestArea = Double.MAX_VALUE;
+		double[] best = null;
+		for (int i = 0; i < hull.size(); i++) {
+			double[] a = hull.get(i), b = hull.get((i + 1) % hull.size());
+			double length = Math.hypot(b[0] - a[0], b[1] - a[1]);
+			double ux = (b[0] - a[0]) / length, uy = (b[1] - a[1]) / length;
+			double minU = Double.MAX_VALUE, maxU = -Double.MAX_VALUE, minV = Double.MAX_VALUE, maxV = -Double.MAX_VALUE;
+			for (double[] p : hull) {
+				double u = p[0] * ux + p[1] * uy, v = p[1] * ux - p[0] * uy;
+				minU = Math.min(minU, u);
+				maxU = Math.max(maxU, u);
+				minV = Math.min(minV, v);
+				maxV = Math.max(maxV, v);
+			}
+			double area = (maxU - minU) * (maxV - minV);
+			if (area < bestArea) {
+				bestArea = area;
+				best = new double[] {maxU - minU, maxV - minV};
+			}
+		}
+		return best;
+	}
+
+	private static List<double[]> convexHull(List<double[]> points) {
+		List<double[]> sorted = new ArrayList<double[]>(points);
+		Collections.sort(sorted, new Comparator<double[]>() {
+			@Override
+			public int compare(double[] o1, double[] o2) {
+				return o1[0] != o2[0] ? Double.compare(o1[0], o2[0]) : Double.compare(o1[1], o2[1]);
+			}
+		});
+		double[][] hull = new double[2 * sorted.size()][];
+		int k = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			while (k >= 2 && cross(hull[k - 2], hull[k - 1], sorted.get(i)) <= 0) {
+				k--;
+			}
+			hull[k++] = sorted.get(i);
+		}
+		for (int i = sorted.size() - 2, lower = k + 1; i >= 0; i--) {
+			while (k >= lower && cross(hull[k - 2], hull[k - 1], sorted.get(i)) <= 0) {
+				k--;
+			}
+			hull[k++] = sorted.get(i);
+		}
+		return Arrays.asList(hull).subList(0, k - 1);
+	}
+
+	private static double cross(double[] o, double[] a, double[] b) {
+		return (a[0] - o[0]) * (b[1] - o[1]) - (a[1] - o[1]) * (b[0] - o[0]);
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.BeaconAnalyzer.ButtonDetectionMethod;
+import com.acmerobotics.library.vision.BeaconPipeline.DropPolicy;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BeaconPipelineTest {
+
+	private static final int FRAMES = 10;
+
+	@Before
+	public void loadOpenCv() {
+		try {
+			System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		} catch (UnsatisfiedLinkError e) {
+			Assume.assumeNoException("OpenCV native library not available", e);
+		}
+	}
+
+	@Test
+	public void throwingListenerDoesNotStopTheWorker() throws InterruptedException {
+		final RuntimeException error = new IllegalStateException("listener failure");
+		final AtomicInteger delivered = new AtomicInteger();
+		BeaconPipeline.ResultListener listener = new BeaconPipeline.ResultListener() {
+			@Override
+			public void onResult(BeaconPipeline.Result result) {
+				delivered.incrementAndGet();
+				if (result.frameNumber % 2 == 0) {
+					throw error;
+				}
+			}
+		};
+		BeaconPipeline pipeline = new BeaconPipeline(new BeaconAnalyzer(), ButtonDetectionMethod.BUTTON_ELLIPSE, listener, 1, DropPolicy.BLOCK);
+		Mat image = SyntheticBeacons.createBeaconImage(320, 0, 1);
+		pipeline.start();
+		try {
+			// with BLOCK every submit waits for the worker, so a dead worker would hang here
+			for (int i = 0; i < FRAMES; i++) {
+				assertTrue(pipeline.submit(image, i));
+			}
+			long deadline = System.currentTimeMillis() + 30000;
+			while (delivered.get() < FRAMES && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(FRAMES, delivered.get());
+			assertEquals(FRAMES / 2, pipeline.getFailedFrames());
+			assertSame(error, pipeline.getLastError());
+		} finally {
+			pipeline.release();
+			image.release();
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.acmerobotics.library.vision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ButtonDetectorTest {
+
+	private static final double MIN_RADIUS = 10;
+
+	// points on a circle from one angle to another, in degrees, rounded to the pixel grid
+	private static int[] arc(double radius, int from, int to) {
+		int[] points = new int[2 * (to - from)];
+		for (int i = 0; i < to - from; i++) {
+			double angle = Math.toRadians(from + i);
+			points[2 * i] = (int) Math.round(100 + radius * Math.cos(angle));
+			points[2 * i + 1] = (int) Math.round(100 + radius * Math.sin(angle));
+		}
+		return points;
+	}
+
+	private static boolean isLargeEnough(ContourBatch batch, int i) {
+		int[] bounds = new int[4];
+		batch.getBounds(i, bounds);
+		return ButtonDetector.isLargeEnough(bounds[2] - bounds[0], bounds[3] - bounds[1], batch.getPerimeter(i), MIN_RADIUS);
+	}
+
+	@Test
+	public void thresholdsAreInclusive() {
+		assertTrue(ButtonDetector.isLargeEnough(10, 10, Math.PI * MIN_RADIUS, MIN_RADIUS));
+		assertTrue(ButtonDetector.isLargeEnough(9, 10, 40, MIN_RADIUS));
+		assertFalse(ButtonDetector.isLargeEnough(9, 9, 40, MIN_RADIUS));
+		assertFalse(ButtonDetector.isLargeEnough(10, 10, Math.PI * MIN_RADIUS - 0.01, MIN_RADIUS));
+	}
+
+	@Test
+	public void keepsCirclesJustAboveMinRadius() {
+		ContourBatch batch = new ContourBatch();
+		batch.read(arc(MIN_RADIUS + 0.5, 0, 360), arc(MIN_RADIUS / 2 + 0.5, 0, 360), arc(MIN_RADIUS / 2 - 1, 0, 360));
+		assertTrue(isLargeEnough(batch, 0));
+		// half the radius is where the prefilter starts rejecting
+		assertTrue(isLargeEnough(batch, 1));
+		assertFalse(isLargeEnough(batch, 2));
+	}
+
+	@Test
+	public void rejectsShortArcsOfLargeCircles() {
+		// a fitted ellipse could have radius 40 here, but the prefilter is only a heuristic
+		ContourBatch batch = new ContourBatch();
+		batch.read(arc(40, 0, 12));
+		assertFalse(isLargeEnough(batch, 0));
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.acmerobotics.library.vision;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContourBatchTest {
+
+	private static final int[] SQUARE = {0, 0, 10, 0, 10, 10, 0, 10};
+	// the same L shape traced in both directions, 3x3 square minus the top right 2x2
+	private static final int[] L_CLOCKWISE = {5, 5, 5, 8, 8, 8, 8, 7, 6, 7, 6, 5};
+	private static final int[] L_COUNTERCLOCKWISE = {5, 5, 6, 5, 6, 7, 8, 7, 8, 8, 5, 8};
+
+	@Test
+	public void packsContoursInOrder() {
+		ContourBatch batch = new ContourBatch();
+		batch.read(SQUARE, new int[] {3, 4}, L_CLOCKWISE);
+		assertEquals(3, batch.size());
+		assertEquals(4, batch.getLength(0));
+		assertEquals(1, batch.getLength(1));
+		assertEquals(6, batch.getLength(2));
+
+		// a smaller batch reuses the buffers
+		batch.read(new int[] {1, 2, 3, 4});
+		assertEquals(1, batch.size());
+		assertEquals(2, batch.getLength(0));
+	}
+
+	@Test
+	public void boundsAreExclusive() {
+		ContourBatch batch = new ContourBatch();
+		batch.read(SQUARE, new int[] {3, 4}, L_CLOCKWISE);
+		int[] bounds = new int[4];
+		batch.getBounds(0, bounds);
+		assertArrayEquals(new int[] {0, 0, 11, 11}, bounds);
+		batch.getBounds(1, bounds);
+		assertArrayEquals(new int[] {3, 4, 4, 5}, bounds);
+		batch.getBounds(2, bounds);
+		assertArrayEquals(new int[] {5, 5, 9, 9}, bounds);
+	}
+
+	@Test
+	public void perimeterClosesThePolygon() {
+		ContourBatch batch = new ContourBatch();
+		batch.read(SQUARE, new int[] {3, 4}, L_CLOCKWISE, new int[] {0, 0, 3, 4});
+		assertEquals(40, batch.getPerimeter(0), 1e-9);
+		assertEquals(0, batch.getPerimeter(1), 0);
+		assertEquals(12, batch.getPerimeter(2), 1e-9);
+		// an open segment is traced out and back
+		assertEquals(10, batch.getPerimeter(3), 1e-9);
+	}
+
+	@Test
+	public void shoelaceAreaIgnoresOrientation() {
+		ContourBatch batch = new ContourBatch();
+		batch.read(SQUARE, new int[] {3, 4}, L_CLOCKWISE, L_COUNTERCLOCKWISE, new int[] {0, 0, 3, 4});
+		assertEquals(100, batch.getArea(0), 0);
+		assertEquals(0, batch.getArea(1), 0);
+		assertEquals(5, batch.getArea(2), 0);
+		assertEquals(5, batch.getArea(3), 0);
+		assertEquals(0, batch.getArea(4), 0);
+	}
+
+	@Test
+	public void shoelaceAreaMatchesRandomRectangles() {
+		Random random = new Random(17);
+		ContourBatch batch = new ContourBatch();
+		for (int trial = 0; trial < 200; trial++) {
+			int x = random.nextInt(2000) - 1000, y = random.nextInt(2000) - 1000;
+			int width = 1 + random.nextInt(2000), height = 1 + random.nextInt(2000);
+			// rotated a quarter turn at a time so the corners stay on the integer grid
+			int[] rect = {x, y, x + width, y, x + width, y + height, x, y + height};
+			int shift = 2 * random.nextInt(4);
+			int[] rotated = new int[8];
+			for (int j = 0; j < 8; j++) {
+				rotated[j] = rect[(j + shift) % 8];
+			}
+			batch.read(rotated);
+			assertEquals((double) width * height, batch.getArea(0), 0);
+			assertEquals(2.0 * (width + height), batch.getPerimeter(0), 1e-9);
+		}
+	}
+
+	@Test
+	public void circularityOfKnownShapes() {
+		int[] polygon = new int[2 * 360];
+		for (int i = 0; i < 360; i++) {
+			polygon[2 * i] = (int) Math.round(1000 * Math.cos(Math.toRadians(i)));
+			polygon[2 * i + 1] = (int) Math.round(1000 * Math.sin(Math.toRadians(i)));
+		}
+		ContourBatch batch = new ContourBatch();
+		batch.read(polygon, SQUARE, new int[] {0, 0, 3, 4}, new int[] {3, 4});
+		assertEquals(1, batch.getCircularity(0), 1e-3);
+		assertEquals(Math.PI / 4, batch.getCircularity(1), 1e-9);
+		assertEquals(0, batch.getCircularity(2), 0);
+		assertEquals(0, batch.getCircularity(3), 0);
+		assertTrue(batch.getCircularity(0) <= 1);
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.acmerobotics.library.vision;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	// records value and a much larger one, so the median is the upper bound of value's bucket
+	private static long bucketUpperBound(long value) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(value);
+		histogram.record(Long.MAX_VALUE / 4);
+		return histogram.getPercentile(50);
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		for (long value = 0; value < 16; value++) {
+			assertEquals(value, bucketUpperBound(value));
+		}
+	}
+
+	@Test
+	public void bucketsAreWithinAnEighth() {
+		for (int exponent = 4; exponent < 60; exponent++) {
+			for (long value : new long[] {1L << exponent, (1L << exponent) + 1, (3L << exponent) / 2, (2L << exponent) - 1}) {
+				long upperBound = bucketUpperBound(value);
+				assertTrue(value + " -> " + upperBound, upperBound >= value);
+				assertTrue(value + " -> " + upperBound, upperBound - value <= value / 8);
+			}
+		}
+	}
+
+	@Test
+	public void bucketsAreContiguous() {
+		long previous = bucketUpperBound(15);
+		for (long value = 16; value < 5000; value++) {
+			long upperBound = bucketUpperBound(value);
+			if (upperBound != previous) {
+				assertEquals("new bucket at " + value, previous + 1, value);
+				previous = upperBound;
+			}
+		}
+	}
+
+	@Test
+	public void percentilesTrackSortedValues() {
+		Random random = new Random(11);
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[10000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Math.exp(12 * random.nextDouble());
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+		for (double percentile : new double[] {1, 25, 50, 90, 99, 99.9, 100}) {
+			long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+			long estimate = histogram.getPercentile(percentile);
+			assertTrue(percentile + ": " + estimate + " < " + exact, estimate >= exact);
+			assertTrue(percentile + ": " + estimate + " > " + exact, estimate - exact <= Math.max(0, exact / 8));
+		}
+	}
+
+	@Test
+	public void summaryAndReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(0, histogram.getMean(), 0);
+
+		histogram.record(10);
+		histogram.record(30);
+		histogram.record(-5);
+		assertEquals(3, histogram.getCount());
+		assertEquals(35, histogram.getTotal());
+		assertEquals(35 / 3.0, histogram.getMean(), 1e-9);
+		assertEquals(30, histogram.getMax());
+		assertEquals(30, histogram.getPercentile(100));
+		assertEquals(0, histogram.getPercentile(1));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getTotal());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void concurrentRecordsAreAllCounted() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int offset = t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						histogram.record(i % 100 + offset);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, histogram.getCount());
+		assertEquals(102, histogram.getMax());
+		assertEquals(4 * 100 * 4950 + 10000 * (0 + 1 + 2 + 3), histogram.getTotal());
+	}
+
+}
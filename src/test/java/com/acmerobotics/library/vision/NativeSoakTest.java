@@ -0,0 +1,84 @@
+package com.acmerobotics.library.vision;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Soak check for native leaks: runs synthetic frames through the static
+ * {@link BeaconAnalyzer#analyzeImage} and fails if the live native usage reported by
+ * {@link NativeMemory} grows after warmup. The number of frames comes from the
+ * {@code soak.frames} system property; {@code gradle soak} runs the long version.
+ */
+public class NativeSoakTest {
+
+	private static final int NUM_IMAGES = 8, WARMUP_FRAMES = 10 * NUM_IMAGES;
+
+	@Before
+	public void loadOpenCv() {
+		try {
+			System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		} catch (UnsatisfiedLinkError e) {
+			Assume.assumeNoException("OpenCV native library not available", e);
+		}
+		NativeMemory.setEnabled(true);
+	}
+
+	@After
+	public void disableTracking() {
+		NativeMemory.setEnabled(false);
+	}
+
+	@Test
+	public void nativeUsageStaysFlat() {
+		int frames = Integer.getInteger("soak.frames", 400);
+
+		// a cycle of different frames so the number of regions and contours varies
+		List<Mat> images = new ArrayList<Mat>();
+		for (int i = 0; i < NUM_IMAGES; i++) {
+			images.add(SyntheticBeacons.createBeaconImage(640, 5 * i, i));
+		}
+		Mat frame = new Mat();
+		List<Beacon> beacons = new ArrayList<Beacon>();
+
+		NativeMemory.Usage baseline = null, peak = null;
+		for (int i = 0; i < WARMUP_FRAMES + frames; i++) {
+			images.get(i % NUM_IMAGES).copyTo(frame);
+			beacons.clear();
+			BeaconAnalyzer.analyzeImage(frame, beacons);
+
+			// compare at the same point of the cycle since the regions kept alive differ per frame
+			if (i >= WARMUP_FRAMES - 1 && (i + 1) % NUM_IMAGES == 0) {
+				NativeMemory.Usage usage = NativeMemory.getUsage();
+				if (baseline == null) {
+					baseline = usage;
+					peak = usage;
+				} else if (usage.bytes > peak.bytes || usage.count > peak.count) {
+					peak = usage;
+				}
+			}
+		}
+
+		StringBuilder owners = new StringBuilder();
+		for (Map.Entry<String, NativeMemory.Usage> entry : NativeMemory.getUsageByOwner().entrySet()) {
+			owners.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue());
+		}
+		assertTrue("native usage grew over " + frames + " frames from " + baseline + " to " + peak + owners,
+				peak.bytes <= baseline.bytes && peak.count <= baseline.count);
+
+		frame.release();
+		for (Mat image : images) {
+			image.release();
+		}
+	}
+
+}
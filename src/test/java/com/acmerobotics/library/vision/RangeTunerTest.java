@@ -0,0 +1,111 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+
+import org.junit.Test;
+import org.opencv.core.Scalar;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RangeTunerTest {
+
+	private static final int RED = 0, BLUE = 1, BACKGROUND = 2;
+	private static final int NUM_BINS = RangeTuner.HUE_BINS * RangeTuner.SAT_BINS * RangeTuner.VAL_BINS;
+
+	private static int bin(int h, int s, int v) {
+		return (h * RangeTuner.SAT_BINS + s) * RangeTuner.VAL_BINS + v;
+	}
+
+	@Test
+	public void countMatchesBruteForce() {
+		Random random = new Random(13);
+		RangeTuner tuner = new RangeTuner();
+		long[][] totals = new long[3][NUM_BINS];
+		for (int image = 0; image < 3; image++) {
+			int[][] histograms = new int[3][NUM_BINS];
+			for (int c = 0; c < 3; c++) {
+				for (int i = 0; i < NUM_BINS; i++) {
+					histograms[c][i] = random.nextInt(4) == 0 ? random.nextInt(1000) : 0;
+					totals[c][i] += histograms[c][i];
+				}
+			}
+			tuner.addHistograms(histograms);
+		}
+		assertEquals(3, tuner.getImageCount());
+
+		for (int trial = 0; trial < 300; trial++) {
+			int c = random.nextInt(3);
+			int hueLow = random.nextInt(RangeTuner.HUE_BINS), hueHigh = random.nextInt(RangeTuner.HUE_BINS);
+			int s0 = random.nextInt(RangeTuner.SAT_BINS), v0 = random.nextInt(RangeTuner.VAL_BINS);
+
+			long expected = 0;
+			for (int span = 0; span < RangeTuner.HUE_BINS; span++) {
+				int h = (hueLow + span) % RangeTuner.HUE_BINS;
+				for (int s = s0; s < RangeTuner.SAT_BINS; s++) {
+					for (int v = v0; v < RangeTuner.VAL_BINS; v++) {
+						expected += totals[c][bin(h, s, v)];
+					}
+				}
+				if (h == hueHigh) {
+					break;
+				}
+			}
+			assertEquals(expected, tuner.count(c, hueLow, hueHigh, s0, v0));
+		}
+	}
+
+	@Test
+	public void addingHistogramsUpdatesCounts() {
+		RangeTuner tuner = new RangeTuner();
+		int[][] histograms = new int[3][NUM_BINS];
+		histograms[RED][bin(3, 4, 5)] = 7;
+		tuner.addHistograms(histograms);
+		assertEquals(7, tuner.count(RED, 0, RangeTuner.HUE_BINS - 1, 0, 0));
+		tuner.addHistograms(histograms);
+		assertEquals(14, tuner.count(RED, 0, RangeTuner.HUE_BINS - 1, 0, 0));
+	}
+
+	@Test
+	public void findsSeparableRange() {
+		int[][] histograms = new int[3][NUM_BINS];
+		for (int h = 0; h < RangeTuner.HUE_BINS; h++) {
+			for (int s = 0; s < RangeTuner.SAT_BINS; s++) {
+				for (int v = 0; v < RangeTuner.VAL_BINS; v++) {
+					// red wraps around hue 0, blue sits around 110 degrees, both bright and saturated
+					boolean saturated = s >= 12 && v >= 8;
+					if (saturated && (h >= 43 || h <= 2)) {
+						histograms[RED][bin(h, s, v)] = 50;
+					} else if (saturated && h >= 25 && h <= 30) {
+						histograms[BLUE][bin(h, s, v)] = 50;
+					} else {
+						histograms[BACKGROUND][bin(h, s, v)] = 20;
+					}
+				}
+			}
+		}
+		RangeTuner tuner = new RangeTuner();
+		tuner.setThreads(2);
+		tuner.addHistograms(histograms);
+
+		RangeTuner.Result red = tuner.tune(BeaconColor.RED);
+		assertEquals(1, red.precision, 0);
+		assertEquals(1, red.recall, 0);
+		List<Scalar> redRanges = red.range.getRanges();
+		assertEquals(4, redRanges.size());
+		assertEquals(43 * 4, redRanges.get(0).val[0], 0);
+		assertEquals(12 * 8, redRanges.get(0).val[1], 0);
+		assertEquals(8 * 8, redRanges.get(0).val[2], 0);
+		assertEquals(3 * 4 - 1, redRanges.get(3).val[0], 0);
+
+		RangeTuner.Result blue = tuner.tune(BeaconColor.BLUE);
+		assertEquals(1, blue.score, 0);
+		List<Scalar> blueRanges = blue.range.getRanges();
+		assertEquals(2, blueRanges.size());
+		assertEquals(25 * 4, blueRanges.get(0).val[0], 0);
+		assertEquals(31 * 4 - 1, blueRanges.get(1).val[0], 0);
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.acmerobotics.library.vision;
+
+import com.acmerobotics.library.vision.Beacon.BeaconColor;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RegionGridTest {
+
+	static BeaconRegion region(double x, double y, double width, double height, double angle) {
+		RotatedRect bounds = new RotatedRect(new Point(x, y), new Size(width, height), angle);
+		return new BeaconRegion(BeaconColor.RED, bounds, width * height, x, y);
+	}
+
+	private static List<BeaconRegion> randomRegions(Random random, int count) {
+		List<BeaconRegion> regions = new ArrayList<BeaconRegion>();
+		for (int i = 0; i < count; i++) {
+			regions.add(region(640 * random.nextDouble(), 480 * random.nextDouble(),
+					5 + 150 * random.nextDouble(), 5 + 150 * random.nextDouble(), 90 * random.nextDouble()));
+		}
+		return regions;
+	}
+
+	@Test
+	public void assignsLikeBruteForce() {
+		Random random = new Random(3);
+		for (int cellSize : new int[] {1, 7, 32, 1000}) {
+			List<BeaconRegion> regions = randomRegions(random, 40);
+			CircleBuffer buttons = new CircleBuffer();
+			for (int i = 0; i < 500; i++) {
+				buttons.add(Math.round(-50 + 740 * random.nextDouble()), Math.round(-50 + 580 * random.nextDouble()), 4);
+			}
+
+			RegionGrid grid = new RegionGrid(cellSize);
+			grid.build(regions);
+			grid.assignButtons(buttons);
+
+			for (BeaconRegion region : regions) {
+				List<Circle> expected = new ArrayList<Circle>();
+				for (int b = 0; b < buttons.size(); b++) {
+					if (region.boundingRectContains(buttons.getX(b), buttons.getY(b))) {
+						expected.add(buttons.toCircle(b));
+					}
+				}
+				List<Circle> actual = region.getButtons();
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i).pt.x, actual.get(i).pt.x, 0);
+					assertEquals(expected.get(i).pt.y, actual.get(i).pt.y, 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void sharesOneCircleBetweenOverlappingRegions() {
+		List<BeaconRegion> regions = new ArrayList<BeaconRegion>();
+		regions.add(region(50, 50, 40, 40, 0));
+		regions.add(region(60, 60, 40, 40, 0));
+		CircleBuffer buttons = new CircleBuffer();
+		buttons.add(55, 55, 3);
+
+		RegionGrid grid = new RegionGrid();
+		grid.build(regions);
+		grid.assignButtons(buttons);
+
+		assertEquals(1, regions.get(0).getButtons().size());
+		assertSame(regions.get(0).getButtons().get(0), regions.get(1).getButtons().get(0));
+	}
+
+	@Test
+	public void circleListMatchesBuffer() {
+		Random random = new Random(5);
+		List<BeaconRegion> regions = randomRegions(random, 20);
+		List<BeaconRegion> copies = new ArrayList<BeaconRegion>();
+		for (BeaconRegion region : regions) {
+			RotatedRect bounds = region.getBounds();
+			copies.add(region(bounds.center.x, bounds.center.y, bounds.size.width, bounds.size.height, bounds.angle));
+		}
+		CircleBuffer buttons = new CircleBuffer();
+		for (int i = 0; i < 200; i++) {
+			buttons.add(Math.round(640 * random.nextDouble()), Math.round(480 * random.nextDouble()), 4);
+		}
+		List<Circle> circles = new ArrayList<Circle>();
+		buttons.toCircles(circles);
+
+		RegionGrid grid = new RegionGrid();
+		grid.build(regions);
+		grid.assignButtons(buttons);
+		grid.build(copies);
+		grid.assignButtons(circles);
+
+		for (int i = 0; i < regions.size(); i++) {
+			assertEquals(regions.get(i).getButtons().size(), copies.get(i).getButtons().size());
+		}
+	}
+
+	@Test
+	public void emptyGridIgnoresButtons() {
+		RegionGrid grid = new RegionGrid();
+		grid.build(new ArrayList<BeaconRegion>());
+		CircleBuffer buttons = new CircleBuffer();
+		buttons.add(10, 10, 3);
+		grid.assignButtons(buttons);
+	}
+
+}
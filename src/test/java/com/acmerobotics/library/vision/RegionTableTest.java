@@ -0,0 +1,81 @@
+package com.acmerobotics.library.vision;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RegionTableTest {
+
+	@Test
+	public void copiesRegionGeometry() {
+		Random random = new Random(9);
+		RegionTable table = new RegionTable();
+		// grows past the initial capacity, then shrinks again
+		for (int count : new int[] {3, 40, 5}) {
+			List<BeaconRegion> regions = new ArrayList<BeaconRegion>();
+			for (int i = 0; i < count; i++) {
+				regions.add(RegionGridTest.region(640 * random.nextDouble(), 480 * random.nextDouble(),
+						5 + 100 * random.nextDouble(), 5 + 100 * random.nextDouble(), 180 * random.nextDouble()));
+			}
+			table.build(regions);
+
+			assertEquals(count, table.size());
+			for (int i = 0; i < count; i++) {
+				BeaconRegion region = regions.get(i);
+				assertSame(region, table.getRegion(i));
+				assertEquals(region.getRectX(), table.getRectX(i));
+				assertEquals(region.getRectY(), table.getRectY(i));
+				assertEquals(region.getRectX() + region.getRectWidth(), table.getRectRight(i));
+				assertEquals(region.getRectY() + region.getRectHeight(), table.getRectBottom(i));
+				assertEquals(region.getCentroidX(), table.getCentroidX(i), 0);
+				assertEquals(region.getCentroidY(), table.getCentroidY(i), 0);
+				assertEquals(region.area(), table.getArea(i), 0);
+			}
+		}
+	}
+
+	@Test
+	public void containsMatchesRegion() {
+		List<BeaconRegion> regions = new ArrayList<BeaconRegion>();
+		regions.add(RegionGridTest.region(20, 30, 10, 20, 0));
+		RegionTable table = new RegionTable();
+		table.build(regions);
+
+		BeaconRegion region = regions.get(0);
+		for (double y = 15; y <= 45; y += 0.5) {
+			for (double x = 10; x <= 30; x += 0.5) {
+				assertEquals(x + "," + y, region.boundingRectContains(x, y), table.contains(0, x, y));
+			}
+		}
+	}
+
+	@Test
+	public void circleBufferGrowsAndOffsets() {
+		CircleBuffer buffer = new CircleBuffer(1);
+		for (int i = 0; i < 100; i++) {
+			buffer.add(i, 2 * i, i % 7);
+		}
+		buffer.offset(10, -5);
+		assertEquals(100, buffer.size());
+		for (int i = 0; i < 100; i++) {
+			Circle circle = buffer.toCircle(i);
+			assertEquals(i + 10, circle.pt.x, 0);
+			assertEquals(2 * i - 5, circle.pt.y, 0);
+			assertEquals(i % 7, circle.radius);
+		}
+
+		List<Circle> circles = new ArrayList<Circle>();
+		circles.add(buffer.toCircle(0));
+		buffer.toCircles(circles);
+		assertEquals(100, circles.size());
+
+		buffer.clear();
+		assertEquals(0, buffer.size());
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.acmerobotics.library.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic beacon frames for the benchmarks and the soak test: a red/blue
+ * beacon with dark buttons in the middle of a noisy gray field, plus optional colored
+ * distractor blobs.
+ */
+public class SyntheticBeacons {
+
+	public static final Scalar BACKGROUND = new Scalar(110, 110, 110);
+	public static final Scalar RED = new Scalar(60, 60, 255);
+	public static final Scalar BLUE = new Scalar(255, 150, 60);
+	public static final Scalar BUTTON = new Scalar(20, 20, 20);
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	public static Mat createBeaconImage(int width, int numDistractors, long seed) {
+		int height = width * 3 / 4;
+		Mat image = new Mat(height, width, CvType.CV_8UC3, BACKGROUND);
+
+		int beaconWidth = (int) (0.3 * width);
+		int beaconHeight = (int) (beaconWidth * Beacon.BEACON_HEIGHT / Beacon.BEACON_WIDTH);
+		int left = (width - beaconWidth) / 2;
+		int top = (height - beaconHeight) / 2;
+		int middle = left + beaconWidth / 2;
+		Imgproc.rectangle(image, new Point(left, top), new Point(middle, top + beaconHeight), RED, -1);
+		Imgproc.rectangle(image, new Point(middle, top), new Point(left + beaconWidth, top + beaconHeight), BLUE, -1);
+
+		int buttonRadius = beaconWidth / 12;
+		int buttonY = top + beaconHeight - 2 * buttonRadius;
+		Imgproc.circle(image, new Point(left + beaconWidth / 4, buttonY), buttonRadius, BUTTON, -1);
+		Imgproc.circle(image, new Point(left + 3 * beaconWidth / 4, buttonY), buttonRadius, BUTTON, -1);
+
+		Random random = new Random(seed);
+		for (int i = 0; i < numDistractors; i++) {
+			int size = width / 40 + random.nextInt(width / 20);
+			int x = random.nextInt(width - size);
+			int y = random.nextInt(height - size);
+			Imgproc.rectangle(image, new Point(x, y), new Point(x + size, y + size), random.nextBoolean() ? RED : BLUE, -1);
+		}
+
+		byte[] noiseData = new byte[width * height * 3];
+		for (int i = 0; i < noiseData.length; i++) {
+			noiseData[i] = (byte) random.nextInt(20);
+		}
+		Mat noise = new Mat(height, width, CvType.CV_8UC3);
+		noise.put(0, 0, noiseData);
+		Core.add(image, noise, image);
+		noise.release();
+
+		return image;
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.acmerobotics.library.vision;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TileGridTest {
+
+	private static final int[][] FRAME_SIZES = {{640, 480}, {1280, 720}, {321, 239}, {100, 50}, {1, 1}};
+
+	@Test
+	public void coresPartitionTheFrame() {
+		for (int tileSize : new int[] {64, 100, 256, 1000}) {
+			for (int[] frame : FRAME_SIZES) {
+				TileGrid grid = new TileGrid(tileSize);
+				grid.layout(frame[0], frame[1]);
+
+				int[][] covered = new int[frame[1]][frame[0]];
+				for (int i = 0; i < grid.size(); i++) {
+					Rect core = grid.getCore(i);
+					assertTrue(core.toString(), core.width > 0 && core.height > 0);
+					assertTrue(core.toString(), core.width <= tileSize && core.height <= tileSize);
+					for (int y = core.y; y < core.y + core.height; y++) {
+						for (int x = core.x; x < core.x + core.width; x++) {
+							covered[y][x]++;
+						}
+					}
+				}
+				for (int y = 0; y < frame[1]; y++) {
+					for (int x = 0; x < frame[0]; x++) {
+						assertEquals(tileSize + " " + x + "," + y, 1, covered[y][x]);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void tilesAddOverlapWithinTheFrame() {
+		for (int overlap : new int[] {0, 5, 32}) {
+			for (int[] frame : FRAME_SIZES) {
+				TileGrid grid = new TileGrid(100, overlap);
+				grid.layout(frame[0], frame[1]);
+				for (int i = 0; i < grid.size(); i++) {
+					Rect core = grid.getCore(i), tile = grid.getTile(i);
+					assertEquals(Math.max(0, core.x - overlap), tile.x);
+					assertEquals(Math.max(0, core.y - overlap), tile.y);
+					assertEquals(Math.min(frame[0], core.x + core.width + overlap), tile.x + tile.width);
+					assertEquals(Math.min(frame[1], core.y + core.height + overlap), tile.y + tile.height);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void scaleChangesOverlapAndLayout() {
+		TileGrid grid = new TileGrid(200, 32);
+		grid.layout(640, 480);
+		assertEquals(32, grid.getOverlap());
+		// four 160 px columns, so the first tile ends one overlap past 160
+		assertEquals(192, grid.getTile(0).width);
+
+		grid.setScale(0.5);
+		assertEquals(16, grid.getOverlap());
+		// same frame size, but the tiles are recomputed for the new overlap
+		grid.layout(640, 480);
+		assertEquals(176, grid.getTile(0).width);
+
+		grid.setScale(0.01);
+		assertEquals(1, grid.getOverlap());
+	}
+
+	@Test
+	public void layoutIsReusedForTheSameSize() {
+		TileGrid grid = new TileGrid(100);
+		grid.layout(640, 480);
+		Rect core = grid.getCore(0);
+		grid.layout(640, 480);
+		assertSame(core, grid.getCore(0));
+
+		grid.layout(320, 240);
+		assertEquals(4 * 3, grid.size());
+	}
+
+}